@@ -0,0 +1,64 @@
+package org.truetranslation.mybible.cds;
+
+import org.truetranslation.mybible.core.AppContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Sets up the home directory used to train the class-data sharing archive: a small
+ * Bible module with Genesis 1 and John 3, and a configuration pointing at it.
+ * Run with -Duser.home (and APPDATA on Windows) set to the same directory as the argument.
+ */
+public class SyntheticModule {
+
+    public static final String MODULE_NAME = "CDS";
+
+    public static void main(String[] args) throws Exception {
+        Path home = Paths.get(args[0]).toAbsolutePath();
+        Path modulesDir = home.resolve("modules");
+        Files.createDirectories(modulesDir);
+
+        Path module = modulesDir.resolve(MODULE_NAME + ".SQLite3");
+        Files.deleteIfExists(module);
+        createModule(module);
+
+        AppContext.get().config().setModulesPath(modulesDir.toString());
+    }
+
+    private static void createModule(Path module) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + module)) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE info (name TEXT, value TEXT)");
+                stmt.execute("CREATE TABLE books (book_color TEXT, book_number NUMERIC, short_name TEXT, long_name TEXT)");
+                stmt.execute("CREATE TABLE verses (book_number NUMERIC, chapter NUMERIC, verse NUMERIC, text TEXT)");
+                stmt.execute("INSERT INTO info VALUES ('language', 'en'), ('description', 'Synthetic module for startup training')");
+                stmt.execute("INSERT INTO books VALUES ('#ccccff', 10, 'Gen', 'Genesis'), ('#ff9fb4', 500, 'John', 'John')");
+            }
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO verses VALUES (?, ?, ?, ?)")) {
+                addChapter(insert, 10, 1, 31);
+                addChapter(insert, 500, 3, 36);
+                insert.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    // Verses carry the usual markup, so the formatters take their full paths
+    private static void addChapter(PreparedStatement insert, int book, int chapter, int verses) throws SQLException {
+        for (int verse = 1; verse <= verses; verse++) {
+            insert.setInt(1, book);
+            insert.setInt(2, chapter);
+            insert.setInt(3, verse);
+            insert.setString(4, "Verse <S>" + (1000 + verse) + "</S> text with <i>markup</i> and a note<f>[" + verse + "]</f>.");
+            insert.addBatch();
+        }
+    }
+}
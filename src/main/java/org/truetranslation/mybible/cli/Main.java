@@ -1,6 +1,5 @@
 package org.truetranslation.mybible.cli;
 
-import com.formdev.flatlaf.FlatLightLaf;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -19,24 +18,20 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import javax.swing.*;
 
 import org.truetranslation.mybible.core.*;
 import org.truetranslation.mybible.core.ExtensionManager;
 import org.truetranslation.mybible.core.ExtensionManager.ExtensionInfo;
 import org.truetranslation.mybible.core.ExtensionManager.ExtensionValidationException;
-import org.truetranslation.mybible.core.model.Book;
 import org.truetranslation.mybible.core.model.GuiVerse;
 import org.truetranslation.mybible.core.model.Reference;
 import org.truetranslation.mybible.core.model.Verse;
-import org.truetranslation.mybible.gui.Gui;
-import org.truetranslation.mybible.gui.GuiConfigManager;
+import org.truetranslation.mybible.gui.GuiLauncher;
 
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -44,6 +39,7 @@ import picocli.CommandLine.Help;
 import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
+import picocli.CommandLine.ScopeType;
 import picocli.CommandLine.Spec;
 
 @Command(
@@ -63,8 +59,11 @@ import picocli.CommandLine.Spec;
     }
 )
 public class Main implements Callable<Integer> {
-    private static ExternalResourceBundleLoader externalLoader;
     private static final ResourceBundle bundle;
+    // Set when the GUI opens because no arguments were given
+    private static boolean guiByDefault;
+    // Set by the gui command; the window's lifetime is not timed as a command
+    private static boolean guiSession;
 
     static {
         String language = System.getProperty("user.language");
@@ -77,9 +76,12 @@ public class Main implements Callable<Integer> {
                 Locale.setDefault(new Locale(language));
             }
         }
-        ConfigManager configManager = new ConfigManager();
-        externalLoader = new ExternalResourceBundleLoader(configManager.getDefaultConfigDir());
-        bundle = externalLoader.getBundle("i18n.messages");
+        bundle = AppContext.get().messages();
+    }
+
+    @Option(names = {"--timings"}, scope = ScopeType.INHERIT, descriptionKey = "timings")
+    void setTimings(boolean timings) {
+        AppContext.get().setTimingsEnabled(timings);
     }
 
     @Override
@@ -118,7 +120,7 @@ public class Main implements Callable<Integer> {
 
         @Override
         public Integer call() {
-            ConfigManager configManager = new ConfigManager();
+            ConfigManager configManager = AppContext.get().config();
             int verbosity = configManager.getVerbosity();
             if (verbose) verbosity = 1;
             if (silent) verbosity = 0;
@@ -153,9 +155,13 @@ public class Main implements Callable<Integer> {
                     activeFormatString = formatString;
                 }
 
+                AppContext context = AppContext.get();
+                long phaseStart = System.nanoTime();
                 VerseIndexManager indexManager = new VerseIndexManager(configManager, verbosity);
-                Map<Integer, Integer> verseIndex = indexManager.getVerseIndex(moduleName, modulePath);
+                VerseIndexManager.VerseIndex verseIndex = indexManager.getIndex(moduleName, modulePath);
+                context.record("verse index", phaseStart);
 
+                phaseStart = System.nanoTime();
                 BookMapper defaultBookMapper = BookMappingManager.getBookMapper(configManager, abbreviationsPrefix, userLanguage);
 
                 BookMapper moduleBookMapper;
@@ -169,20 +175,26 @@ public class Main implements Callable<Integer> {
                     }
                     moduleBookMapper = defaultBookMapper;
                 }
+                context.record("book mappings", phaseStart);
 
+                phaseStart = System.nanoTime();
                 BookMapper parserMapper = useSelfAbbreviations ? moduleBookMapper : defaultBookMapper;
                 ReferenceParser parser = new ReferenceParser(parserMapper, verseIndex);
 
                 List<ReferenceParser.RangeWithCount> rangesWithCount = parser.parseWithCounts(referenceString);
+                context.record("parse", phaseStart);
                 if (rangesWithCount.isEmpty()) { return 1; }
 
                 List<ReferenceParser.Range> ranges = new ArrayList<>(rangesWithCount);
 
+                phaseStart = System.nanoTime();
                 fetcher = new VerseFetcher(modulePath);
                 List<Verse> verses = fetcher.fetch(ranges);
+                context.record("fetch", phaseStart);
                 configManager.setLastUsedModule(moduleName);
 
                 // Extract module language and create language-aware formatter
+                phaseStart = System.nanoTime();
                 String moduleLanguage = BookMapper.extractModuleLanguage(modulePath);
                 OutputFormatter formatter = new OutputFormatter(activeFormatString, defaultBookMapper, moduleBookMapper, moduleName, moduleLanguage, userLanguage);
 
@@ -197,36 +209,23 @@ public class Main implements Callable<Integer> {
                     }
                 } else {
                     List<GuiVerse> guiVerses = new ArrayList<>();
+                    ResolvedBookView bookView = defaultBookMapper.resolve(userLanguage, moduleLanguage, moduleBookMapper);
                     for (Verse verse : verses) {
                         Reference ref = findContainingReference(ranges, verse);
                         String userProvidedShortName = ref != null ? ref.getBookName() : null;
                         int bookNum = verse.getBookNumber();
 
-                        // Use language-aware lookup for default names
-                        Optional<Book> defaultBookOpt = defaultBookMapper.getBook(bookNum, userLanguage, moduleLanguage);
-                        if (!defaultBookOpt.isPresent()) {
-                            defaultBookOpt = defaultBookMapper.getBook(bookNum); // Fallback
-                        }
-
-                        String defaultFullName = defaultBookOpt.map(Book::getFullName).orElse("");
-                        String defaultShortName = defaultBookOpt.map(book ->
-                            (userProvidedShortName != null && book.getShortNames().contains(userProvidedShortName)) ? userProvidedShortName : book.getShortNames().stream().findFirst().orElse("")
-                        ).orElse("");
-
-                        Optional<Book> moduleBookOpt = moduleBookMapper.getBook(bookNum);
-                        String moduleFullName = moduleBookOpt.map(Book::getFullName).orElse(defaultFullName);
-                        String moduleShortName = moduleBookOpt.map(book -> {
-                            List<String> shortNames = book.getShortNames();
-                            return (shortNames.size() > 1) ? shortNames.get(1) : shortNames.stream().findFirst().orElse("");
-                        }).orElse(defaultShortName);
+                        // Language-aware default names with module names, resolved once per lookup
+                        ResolvedBookView.Entry bookEntry = bookView.get(bookNum);
+                        String defaultShortName = bookEntry.abbreviationFor(userProvidedShortName);
 
                         guiVerses.add(new GuiVerse(
                             bookNum,
-                            defaultFullName,
+                            bookEntry.fullName,
                             defaultShortName,
-                            moduleFullName,
-                            moduleShortName,
-                            defaultBookMapper.getAllBookNames(bookNum, moduleBookMapper, moduleLanguage, userLanguage),
+                            bookEntry.moduleFullName,
+                            bookEntry.moduleShortNameOr(defaultShortName),
+                            bookEntry.allNames,
                             verse.getChapter(),
                             verse.getVerse(),
                             verse.getText(),
@@ -238,6 +237,7 @@ public class Main implements Callable<Integer> {
                     printJson = compactArrayField(printJson, "allBookNames");
                     System.out.println(printJson);
                 }
+                context.record("output", phaseStart);
 
             } catch (Exception e) {
                 System.err.println(MessageFormat.format(bundle.getString("error.unexpected"), e.getMessage()));
@@ -329,6 +329,12 @@ public class Main implements Callable<Integer> {
         @Option(names = {"--reinstall"}, descriptionKey = "reinstall")
         private boolean reinstall;
 
+        @Option(names = {"-j", "--jobs"}, paramLabel = "<n>", descriptionKey = "jobs")
+        private Integer jobs;
+
+        @Option(names = {"--stream"}, descriptionKey = "stream")
+        private boolean stream;
+
         @Option(names = {"-L", "--lang", "--language"}, descriptionKey = "language")
         private String language;
 
@@ -358,7 +364,7 @@ public class Main implements Callable<Integer> {
 
         @Override
         public Integer call() {
-            ConfigManager configManager = new ConfigManager();
+            ConfigManager configManager = AppContext.get().config();
             int verbosity = configManager.getVerbosity();
             if (verbose) verbosity = 1;
             if (silent) verbosity = 0;
@@ -517,33 +523,27 @@ public class Main implements Callable<Integer> {
         }
 
         private int installModules(ModuleManager moduleManager, int verbosity) {
-            int successCount = 0;
-            int failCount = 0;
+            if (jobs != null) moduleManager.setDownloadParallelism(jobs);
+            if (stream) moduleManager.setStreamingInstall(true);
+            ModuleManager.InstallResult result;
+            try {
+                result = moduleManager.installModules(Arrays.asList(installNames), specificVersion, reinstall,
+                    new BatchProgress(verbosity));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                return 1;
+            }
+            if (verbosity > 0) System.out.println();
 
-            for (String name : installNames) {
-                try {
-                    boolean success = moduleManager.installModule(name, specificVersion, reinstall,
-                        (current, total, message) -> {
-                            if (verbosity > 0) {
-                                System.out.printf("\r%s: [%d/%d]", name, current, total);
-                            }
-                        });
-
-                    if (success) {
-                        successCount++;
-                        if (verbosity > 0) System.out.println();
-                    }
-                } catch (IOException e) {
-                    System.err.println(MessageFormat.format(bundle.getString("error.mod.installFailed"), name, e.getMessage()));
-                    failCount++;
-                }
+            for (Map.Entry<String, IOException> failure : result.failed.entrySet()) {
+                System.err.println(MessageFormat.format(bundle.getString("error.mod.installFailed"), failure.getKey(), failure.getValue().getMessage()));
             }
 
             if (installNames.length > 1 && verbosity > 0) {
-                System.out.println(MessageFormat.format(bundle.getString("msg.mod.installSummary"), successCount, failCount));
+                System.out.println(MessageFormat.format(bundle.getString("msg.mod.installSummary"), result.installed.size(), result.failed.size()));
             }
 
-            return failCount > 0 ? 1 : 0;
+            return result.failed.isEmpty() ? 0 : 1;
         }
 
         private int removeModules(ModuleManager moduleManager) {
@@ -569,13 +569,10 @@ public class Main implements Callable<Integer> {
         }
 
         private int upgradeModules(ModuleManager moduleManager, int verbosity) throws IOException {
+            if (jobs != null) moduleManager.setDownloadParallelism(jobs);
+            if (stream) moduleManager.setStreamingInstall(true);
             List<String> names = upgradeAll ? null : Arrays.asList(upgradeNames);
-            int upgraded = moduleManager.upgradeModules(names, 
-                (current, total, message) -> {
-                    if (verbosity > 0) {
-                        System.out.printf("\r[%d/%d] %s", current, total, message);
-                    }
-                });
+            int upgraded = moduleManager.upgradeModules(names, new BatchProgress(verbosity));
 
             if (upgraded > 0 && verbosity > 0) {
                 System.out.println();
@@ -630,6 +627,41 @@ public class Main implements Callable<Integer> {
         }
     }
 
+    /**
+     * One console line for a batch install: the modules finished out of the total, then
+     * the download progress of the module that reported last.
+     */
+    static class BatchProgress implements ModuleManager.ProgressCallback {
+        private final int verbosity;
+        private int done;
+        private int total;
+        private int lastLength;
+
+        BatchProgress(int verbosity) {
+            this.verbosity = verbosity;
+        }
+
+        @Override
+        public void update(int current, int total, String message) {
+            this.done = current;
+            this.total = total;
+            print(String.format("[%d/%d] %s", current, total, message));
+        }
+
+        @Override
+        public void moduleUpdate(String moduleName, int current, int total, String message) {
+            int percent = total > 0 ? (int) (current * 100L / total) : 0;
+            print(String.format("[%d/%d] %s: %s %d%%", done, this.total, moduleName, message, percent));
+        }
+
+        // Pads over the rest of a longer previous line
+        private void print(String line) {
+            if (verbosity <= 0) return;
+            System.out.print("\r" + line + " ".repeat(Math.max(0, lastLength - line.length())));
+            lastLength = line.length();
+        }
+    }
+
     @Command(name = "gui", resourceBundle = "picocli.gui")
     static class GuiCommand implements Callable<Integer> {
         @Option(names = {"-m", "--module-name"}, descriptionKey = "module")
@@ -639,14 +671,10 @@ public class Main implements Callable<Integer> {
         String reference;
 
         @Override
-        public Integer call() throws InterruptedException {
-            final java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
-            javax.swing.SwingUtilities.invokeLater(() -> {
-                Gui gui = new Gui(moduleName, reference, () -> latch.countDown());
-                gui.setVisible(true);
-            });
-            latch.await();
-            return 0;
+        public Integer call() throws Exception {
+            guiSession = true;
+            // GuiLauncher, and through it Swing and FlatLaf, is only loaded when this runs
+            return GuiLauncher.launch(moduleName, reference, guiByDefault);
         }
     }
 
@@ -656,7 +684,7 @@ public class Main implements Callable<Integer> {
         File modulesPath;
         @Override
         public Integer call() {
-            ConfigManager configManager = new ConfigManager();
+            ConfigManager configManager = AppContext.get().config();
             if (modulesPath != null) {
                 if (!modulesPath.isDirectory()) {
                     System.err.println(bundle.getString("error.path.invalid"));
@@ -727,7 +755,7 @@ public class Main implements Callable<Integer> {
 
         @Override
         public Integer call() {
-            ConfigManager configManager = new ConfigManager();
+            ConfigManager configManager = AppContext.get().config();
             int verbosity = configManager.getVerbosity();
             if (verbose) verbosity = 1;
             if (silent) verbosity = 0;
@@ -1309,7 +1337,7 @@ public class Main implements Callable<Integer> {
 
         @Override
         public Integer call() {
-            ConfigManager configManager = new ConfigManager();
+            ConfigManager configManager = AppContext.get().config();
             int verbosity = configManager.getVerbosity();
 
             if (moduleName == null || moduleName.isEmpty()) {
@@ -1343,7 +1371,7 @@ public class Main implements Callable<Integer> {
                     bookMapper = BookMappingManager.getBookMapper(configManager, null, userLanguage, moduleLanguage);
                 }
 
-                Map<Integer, Integer> verseIndex = indexManager.getVerseIndex(moduleName, modulePath);
+                VerseIndexManager.VerseIndex verseIndex = indexManager.getIndex(moduleName, modulePath);
                 ReferenceParser parser = new ReferenceParser(bookMapper, verseIndex);
 
                 List<ReferenceParser.RangeWithCount> ranges = parser.parseWithCounts(referenceString);
@@ -1394,7 +1422,7 @@ public class Main implements Callable<Integer> {
             @Override
             public Integer call() {
                 try {
-                    ConfigManager configManager = new ConfigManager();
+                    ConfigManager configManager = AppContext.get().config();
                     Path configPath = configManager.getDefaultConfigDir();
                     if (Files.notExists(configPath)) {
                         Files.createDirectories(configPath);
@@ -1416,7 +1444,7 @@ public class Main implements Callable<Integer> {
         static class OpenModule implements Callable<Integer> {
             @Override
             public Integer call() {
-                ConfigManager configManager = new ConfigManager();
+                ConfigManager configManager = AppContext.get().config();
                 String modulesPathStr = configManager.getModulesPath();
                 if (modulesPathStr == null || modulesPathStr.isEmpty()) {
                     System.err.println(bundle.getString("error.module.notConfigured"));
@@ -1486,31 +1514,23 @@ public class Main implements Callable<Integer> {
 }
 
     public static void main(String[] args) {
+        AppContext context = AppContext.get();
         boolean launchGuiDefault = (args.length == 0);
         int exitCode;
 
-        if (launchGuiDefault || Arrays.asList(args).contains("gui")) {
-            GuiConfigManager configManager = new GuiConfigManager();
-            String lafClassName = configManager.getConfig().lookAndFeelClassName;
-            try {
-                if (lafClassName != null && !lafClassName.isEmpty()) {
-                    UIManager.setLookAndFeel(lafClassName);
-                } else {
-                    UIManager.setLookAndFeel(new FlatLightLaf());
-                }
-            } catch (Exception e) {
-                System.err.println("Failed to set Look and Feel. Continuing with default.");
-                if (!launchGuiDefault) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
+        guiByDefault = launchGuiDefault;
+        long commandStart = System.nanoTime();
         if (launchGuiDefault) {
             exitCode = new CommandLine(new Main()).execute("gui");
         } else {
             exitCode = new CommandLine(new Main()).execute(args);
         }
+        if (!guiSession) {
+            context.record("command", commandStart);
+        }
+        if (context.isTimingsEnabled()) {
+            context.printTimings(System.err);
+        }
         System.exit(exitCode);
     }
 }
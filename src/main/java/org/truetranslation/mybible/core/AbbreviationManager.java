@@ -29,10 +29,7 @@ public class AbbreviationManager {
 
     public AbbreviationManager(ConfigManager configManager, int verbosity) {
         this.moduleDataDir = configManager.getDefaultConfigDir().resolve("moduledata");
-        ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(
-            configManager.getDefaultConfigDir()
-        );
-        this.bundle = externalLoader.getBundle("i18n.messages");
+        this.bundle = AppContext.get().messages();
         this.verbosity = verbosity;
     }
 
@@ -0,0 +1,143 @@
+package org.truetranslation.mybible.core;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+/**
+ * State shared by everything running in one process: the configuration and the
+ * resource registry, each created once on first use. It also records how long the
+ * startup phases took, for the --timings option. It is reached through get() rather
+ * than passed along because picocli creates the commands and the GUI creates its
+ * dialogs in many places, and each of them would otherwise need a new constructor.
+ */
+public final class AppContext {
+
+    private static final AppContext INSTANCE = new AppContext();
+
+    private final long startNanos = System.nanoTime();
+    private final Instant startInstant = Instant.now();
+    private final Path configDir = ConfigManager.resolveDefaultConfigDir();
+    // Phase name to accumulated nanoseconds, in the order phases first ran
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private volatile ConfigManager config;
+    private volatile ExternalResourceBundleLoader bundleLoader;
+    private volatile ResourceRegistry resources;
+    private volatile boolean timingsEnabled;
+
+    private AppContext() {
+    }
+
+    public static AppContext get() {
+        return INSTANCE;
+    }
+
+    public Path getConfigDir() {
+        return configDir;
+    }
+
+    public ConfigManager config() {
+        ConfigManager result = config;
+        if (result == null) {
+            synchronized (this) {
+                result = config;
+                if (result == null) {
+                    long start = System.nanoTime();
+                    result = new ConfigManager(configDir);
+                    config = result;
+                    record("config", start);
+                }
+            }
+        }
+        return result;
+    }
+
+    public ResourceBundle messages() {
+        return bundle("i18n.messages");
+    }
+
+    /**
+     * Returns a bundle for the default locale, preferring one in the config directory.
+     * The bundle is loaded again after the resources are reloaded.
+     */
+    public ResourceBundle bundle(String baseName) {
+        long start = System.nanoTime();
+        ResourceBundle result = resources().bundle(baseName);
+        record("bundles", start);
+        return result;
+    }
+
+    /**
+     * Returns the registry of mappings, themes and bundles, which is reloaded when
+     * extensions are installed or removed.
+     */
+    public ResourceRegistry resources() {
+        ResourceRegistry result = resources;
+        if (result == null) {
+            synchronized (this) {
+                result = resources;
+                if (result == null) {
+                    result = new ResourceRegistry(configDir, bundleLoader());
+                    resources = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public ExternalResourceBundleLoader bundleLoader() {
+        ExternalResourceBundleLoader result = bundleLoader;
+        if (result == null) {
+            synchronized (this) {
+                result = bundleLoader;
+                if (result == null) {
+                    result = new ExternalResourceBundleLoader(configDir);
+                    bundleLoader = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public boolean isTimingsEnabled() {
+        return timingsEnabled;
+    }
+
+    public void setTimingsEnabled(boolean enabled) {
+        this.timingsEnabled = enabled;
+    }
+
+    /**
+     * Adds the time since startNanos (a System.nanoTime() value) to a phase.
+     */
+    public void record(String phase, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        synchronized (phases) {
+            phases.merge(phase, elapsed, Long::sum);
+        }
+    }
+
+    /**
+     * Prints the recorded phases, the time the JVM took to reach main() and the total.
+     * Phases may nest (config is often loaded inside a command phase), so they need not add up.
+     */
+    public void printTimings(PrintStream out) {
+        out.println(messages().getString("msg.timings"));
+        ProcessHandle.current().info().startInstant().ifPresent(processStart ->
+            printPhase(out, "jvm", Duration.between(processStart, startInstant).toNanos()));
+        synchronized (phases) {
+            for (Map.Entry<String, Long> phase : new LinkedHashMap<>(phases).entrySet()) {
+                printPhase(out, phase.getKey(), phase.getValue());
+            }
+        }
+        printPhase(out, "total", System.nanoTime() - startNanos);
+    }
+
+    private static void printPhase(PrintStream out, String phase, long nanos) {
+        out.println(String.format("  %-14s %9.1f ms", phase, nanos / 1_000_000.0));
+    }
+}
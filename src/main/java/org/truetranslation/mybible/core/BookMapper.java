@@ -19,36 +19,43 @@ import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
-@SuppressWarnings("unchecked")
 public class BookMapper {
 
     private final Map<Integer, Book> booksByNumber = new HashMap<>();
     private final Map<String, Book> booksByName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 
     // Store the raw language-aware mapping data
-    private final Map<Integer, Map<String, Object>> languageAwareMapping = new HashMap<>();
+    private final Map<Integer, Map<String, List<String>>> languageAwareMapping = new HashMap<>();
+
+    // Built on first fuzzy lookup or suggestion request
+    private volatile BookNameMatcher nameMatcher;
+
+    // Resolved per-book views, keyed by "userLanguage|moduleLanguage"
+    private final Map<String, ResolvedBookView> resolvedViews = new ConcurrentHashMap<>();
 
     // User-specified language and module language for name lookup
     private final String userLanguage;
     private final String moduleLanguage;
 
-    private static final ConfigManager configManager = new ConfigManager();
-    private static ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(
-        configManager.getDefaultConfigDir()
-    );
-
-    private static ResourceBundle bundle = externalLoader.getBundle("i18n.messages");
-
     // Default language used when no specific language is provided
     private static final String DEFAULT_FALLBACK = "default";
     private static final String DEFAULT_MAPPING_FILENAME = "default_mapping.json";
 
+    // Messages are only needed on errors, so they are not looked up up front
+    private static ResourceBundle bundle() {
+        return AppContext.get().messages();
+    }
+
     public BookMapper(String resourcePath) {
         this(resourcePath, null, null);
     }
@@ -62,12 +69,12 @@ public class BookMapper {
         this.moduleLanguage = moduleLanguage;
         try (InputStream is = BookMapper.class.getResourceAsStream(resourcePath)) {
             if (is == null) {
-                String message = MessageFormat.format(bundle.getString("error.mapping.resourceNotFound"), resourcePath);
+                String message = MessageFormat.format(bundle().getString("error.mapping.resourceNotFound"), resourcePath);
                 throw new IOException(message);
             }
             loadFromInputStream(is);
         } catch (IOException e) {
-            String message = MessageFormat.format(bundle.getString("error.mapping.resourceLoadFailed"), resourcePath, e.getMessage());
+            String message = MessageFormat.format(bundle().getString("error.mapping.resourceLoadFailed"), resourcePath, e.getMessage());
             System.err.println(message);
             e.printStackTrace();
         }
@@ -79,6 +86,12 @@ public class BookMapper {
         loadMapping(abbreviations);
     }
 
+    BookMapper(MappingCache.Snapshot snapshot, String userLanguage, String moduleLanguage) {
+        this.userLanguage = userLanguage;
+        this.moduleLanguage = moduleLanguage;
+        loadSnapshot(snapshot);
+    }
+
     public BookMapper(InputStream inputStream) throws IOException {
         this(inputStream, null, null);
     }
@@ -94,8 +107,8 @@ public class BookMapper {
             loadFromInputStream(inputStream);
         } catch (JsonSyntaxException | IllegalStateException e) {
             // Log the error message
-            System.err.println(bundle.getString("error.mapping.invalidFormat"));
-            System.err.println(bundle.getString("info.mapping.usingDefault"));
+            System.err.println(bundle().getString("error.mapping.invalidFormat"));
+            System.err.println(bundle().getString("info.mapping.usingDefault"));
 
             // Load default mapping as fallback
             loadDefaultMapping();
@@ -131,17 +144,24 @@ public class BookMapper {
             if (defaultStream != null) {
                 loadFromInputStream(defaultStream);
             } else {
-                System.err.println(bundle.getString("error.mapping.defaultNotFound"));
+                System.err.println(bundle().getString("error.mapping.defaultNotFound"));
             }
         } catch (IOException e) {
-            String message = MessageFormat.format(bundle.getString("error.mapping.defaultLoadFailed"), e.getMessage());
+            String message = MessageFormat.format(bundle().getString("error.mapping.defaultLoadFailed"), e.getMessage());
             System.err.println(message);
         }
     }
 
     private void loadLanguageAwareMapping(JsonObject jsonObject) {
         if (jsonObject == null) return;
+        loadSnapshot(compileSnapshot(jsonObject));
+    }
 
+    /**
+     * Parses a language-aware mapping into a snapshot of per-book name tables, resolving
+     * primary names against the bundled default_mapping.json where a book has no inline fallback.
+     */
+    static MappingCache.Snapshot compileSnapshot(JsonObject jsonObject) {
         // Load default mapping once for fallback canonical names
         JsonObject defaultMappingJson = null;
         try (InputStream defaultStream = BookMapper.class.getResourceAsStream("/" + DEFAULT_MAPPING_FILENAME)) {
@@ -152,80 +172,97 @@ public class BookMapper {
             // proceed without default fallback
         }
 
+        Map<Integer, Map<String, List<String>>> bookTables = new LinkedHashMap<>();
+        Map<Integer, List<String>> primaryNamesByBook = new HashMap<>();
+
         for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
             try {
                 int bookNumber = Integer.parseInt(entry.getKey());
                 JsonArray bookArray = entry.getValue().getAsJsonArray();
 
                 if (bookArray != null && bookArray.size() > 0) {
-                    Map<String, Object> bookData = parseBookData(bookArray);
-                    languageAwareMapping.put(bookNumber, bookData);
+                    Map<String, List<String>> bookData = parseBookData(bookArray);
+                    bookTables.put(bookNumber, bookData);
 
                     // Determine primary names: prefer inline fallback, then default_mapping.json
-                    List<String> fallbackNames = (List<String>) bookData.get(DEFAULT_FALLBACK);
+                    List<String> fallbackNames = bookData.get(DEFAULT_FALLBACK);
                     List<String> primaryNames = null;
 
                     if (fallbackNames != null && !fallbackNames.isEmpty()) {
                         primaryNames = fallbackNames;
                     } else if (defaultMappingJson != null && defaultMappingJson.has(entry.getKey())) {
                         JsonArray defaultArray = defaultMappingJson.get(entry.getKey()).getAsJsonArray();
-                        Map<String, Object> defaultBookData = parseBookData(defaultArray);
-                        primaryNames = (List<String>) defaultBookData.get(DEFAULT_FALLBACK);
+                        Map<String, List<String>> defaultBookData = parseBookData(defaultArray);
+                        primaryNames = defaultBookData.get(DEFAULT_FALLBACK);
                     }
 
-                    if (primaryNames == null || primaryNames.isEmpty()) continue;
+                    if (primaryNames != null && !primaryNames.isEmpty()) {
+                        primaryNamesByBook.put(bookNumber, primaryNames);
+                    }
+                }
+            } catch (NumberFormatException | IllegalStateException e) {
+                // Silently ignore entries with non-numeric keys or invalid structure
+            }
+        }
+        return new MappingCache.Snapshot(bookTables, primaryNamesByBook);
+    }
 
-                    String fullName = primaryNames.get(0);
-                    Book book = new Book(bookNumber, fullName, primaryNames);
-                    booksByNumber.put(bookNumber, book);
+    private void loadSnapshot(MappingCache.Snapshot snapshot) {
+        for (Map.Entry<Integer, Map<String, List<String>>> entry : snapshot.bookTables.entrySet()) {
+            int bookNumber = entry.getKey();
+            Map<String, List<String>> bookData = entry.getValue();
+            languageAwareMapping.put(bookNumber, bookData);
 
-                    // Always register primary (fallback) names for lookup
-                    for (String name : primaryNames) {
-                        booksByName.put(name.trim(), book);
-                    }
+            List<String> primaryNames = snapshot.primaryNames.get(bookNumber);
+            if (primaryNames == null || primaryNames.isEmpty()) continue;
 
-                    if (userLanguage == null && moduleLanguage == null) {
-                        // No language filter — register every name from every language key
-                        for (Map.Entry<String, Object> langEntry : bookData.entrySet()) {
-                            if (langEntry.getKey().equals(DEFAULT_FALLBACK)) continue;
-                            List<String> langNames = (List<String>) langEntry.getValue();
-                            if (langNames != null) {
-                                for (String name : langNames) {
-                                    booksByName.put(name.trim(), book);
-                                }
-                            }
+            String fullName = primaryNames.get(0);
+            Book book = new Book(bookNumber, fullName, primaryNames);
+            booksByNumber.put(bookNumber, book);
+
+            // Always register primary (fallback) names for lookup
+            for (String name : primaryNames) {
+                booksByName.put(name.trim(), book);
+            }
+
+            if (userLanguage == null && moduleLanguage == null) {
+                // No language filter — register every name from every language key
+                for (Map.Entry<String, List<String>> langEntry : bookData.entrySet()) {
+                    if (langEntry.getKey().equals(DEFAULT_FALLBACK)) continue;
+                    List<String> langNames = langEntry.getValue();
+                    if (langNames != null) {
+                        for (String name : langNames) {
+                            booksByName.put(name.trim(), book);
                         }
-                    } else {
-                        // Register module language names (if module language is specified)
-                        if (moduleLanguage != null && !moduleLanguage.trim().isEmpty()) {
-                            List<String> moduleLangNames = (List<String>) bookData.get(moduleLanguage);
-                            if (moduleLangNames != null) {
-                                for (String name : moduleLangNames) {
-                                    booksByName.put(name.trim(), book);
-                                }
-                            }
+                    }
+                }
+            } else {
+                // Register module language names (if module language is specified)
+                if (moduleLanguage != null && !moduleLanguage.trim().isEmpty()) {
+                    List<String> moduleLangNames = bookData.get(moduleLanguage);
+                    if (moduleLangNames != null) {
+                        for (String name : moduleLangNames) {
+                            booksByName.put(name.trim(), book);
                         }
+                    }
+                }
 
-                        // Register user language names (if user language is specified and different from module language)
-                        if (userLanguage != null && !userLanguage.trim().isEmpty()
-                                && !userLanguage.equals(moduleLanguage)) {
-                            List<String> userLangNames = (List<String>) bookData.get(userLanguage);
-                            if (userLangNames != null) {
-                                for (String name : userLangNames) {
-                                    booksByName.put(name.trim(), book);
-                                }
-                            }
+                // Register user language names (if user language is specified and different from module language)
+                if (userLanguage != null && !userLanguage.trim().isEmpty()
+                        && !userLanguage.equals(moduleLanguage)) {
+                    List<String> userLangNames = bookData.get(userLanguage);
+                    if (userLangNames != null) {
+                        for (String name : userLangNames) {
+                            booksByName.put(name.trim(), book);
                         }
                     }
                 }
-            } catch (NumberFormatException | IllegalStateException e) {
-                // Silently ignore entries with non-numeric keys or invalid structure
             }
         }
     }
 
-    private Map<String, Object> parseBookData(JsonArray bookArray) {
-        Map<String, Object> bookData = new HashMap<>();
+    private static Map<String, List<String>> parseBookData(JsonArray bookArray) {
+        Map<String, List<String>> bookData = new HashMap<>();
         List<String> fallbackNames = new ArrayList<>();
 
         for (JsonElement element : bookArray) {
@@ -292,46 +329,51 @@ public class BookMapper {
      * 4. English names (if available and different from fallback)
      */
     public Optional<Book> getBook(int bookNumber, String userLanguage, String moduleLanguage) {
-        Map<String, Object> bookData = languageAwareMapping.get(bookNumber);
+        Map<String, List<String>> bookData = languageAwareMapping.get(bookNumber);
         if (bookData == null) {
             return getBook(bookNumber);
         }
 
+        List<String> names = resolveNames(bookData, userLanguage, moduleLanguage);
+        if (names == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new Book(bookNumber, names.get(0), new ArrayList<>(names)));
+    }
+
+    // Walks the four priority tiers and returns the first non-empty name list, or null
+    private List<String> resolveNames(Map<String, List<String>> bookData, String userLanguage, String moduleLanguage) {
         // Priority 1: User-specified language
         if (userLanguage != null && !userLanguage.trim().isEmpty()) {
-            List<String> userLanguageNames = (List<String>) bookData.get(userLanguage);
+            List<String> userLanguageNames = bookData.get(userLanguage);
             if (userLanguageNames != null && !userLanguageNames.isEmpty()) {
-                String fullName = userLanguageNames.get(0);
-                return Optional.of(new Book(bookNumber, fullName, new ArrayList<>(userLanguageNames)));
+                return userLanguageNames;
             }
         }
 
         // Priority 2: Module language (if different from user language)
         if (moduleLanguage != null && !moduleLanguage.trim().isEmpty() && !moduleLanguage.equals(userLanguage)) {
-            List<String> moduleLanguageNames = (List<String>) bookData.get(moduleLanguage);
+            List<String> moduleLanguageNames = bookData.get(moduleLanguage);
             if (moduleLanguageNames != null && !moduleLanguageNames.isEmpty()) {
-                String fullName = moduleLanguageNames.get(0);
-                return Optional.of(new Book(bookNumber, fullName, new ArrayList<>(moduleLanguageNames)));
+                return moduleLanguageNames;
             }
         }
 
         // Priority 3: Default fallback names
-        List<String> fallbackNames = (List<String>) bookData.get(DEFAULT_FALLBACK);
+        List<String> fallbackNames = bookData.get(DEFAULT_FALLBACK);
         if (fallbackNames != null && !fallbackNames.isEmpty()) {
-            String fullName = fallbackNames.get(0);
-            return Optional.of(new Book(bookNumber, fullName, new ArrayList<>(fallbackNames)));
+            return fallbackNames;
         }
 
         // Priority 4: English names (if available and different from user/module languages)
         if (!"en".equals(userLanguage) && !"en".equals(moduleLanguage)) {
-            List<String> englishNames = (List<String>) bookData.get("en");
+            List<String> englishNames = bookData.get("en");
             if (englishNames != null && !englishNames.isEmpty()) {
-                String fullName = englishNames.get(0);
-                return Optional.of(new Book(bookNumber, fullName, new ArrayList<>(englishNames)));
+                return englishNames;
             }
         }
 
-        return Optional.empty();
+        return null;
     }
 
     public Optional<Book> getBook(int bookNumber, String moduleLanguage) {
@@ -342,52 +384,52 @@ public class BookMapper {
         return Optional.ofNullable(booksByName.get(name));
     }
 
+    /**
+     * Looks a book up by name, tolerating small typos when there is no exact match.
+     * A fuzzy match is only returned when a single book is closest to the input.
+     */
+    public Optional<Book> findClosestBook(String name) {
+        Optional<Book> exact = getBook(name);
+        if (exact.isPresent()) {
+            return exact;
+        }
+        return getNameMatcher().findBest(name);
+    }
+
+    /**
+     * Ranked book name suggestions for (partial or misspelled) user input.
+     */
+    public List<BookNameMatcher.Suggestion> suggestBooks(String input, int limit) {
+        return getNameMatcher().suggest(input, limit);
+    }
+
+    private BookNameMatcher getNameMatcher() {
+        BookNameMatcher matcher = nameMatcher;
+        if (matcher == null) {
+            matcher = new BookNameMatcher(booksByName);
+            nameMatcher = matcher;
+        }
+        return matcher;
+    }
+
     public List<String> getNamesForLanguage(int bookNumber, String language) {
-        Map<String, Object> bookData = languageAwareMapping.get(bookNumber);
+        Map<String, List<String>> bookData = languageAwareMapping.get(bookNumber);
         if (bookData == null) {
             return new ArrayList<>();
         }
 
-        List<String> names = (List<String>) bookData.get(language);
+        List<String> names = bookData.get(language);
         return names != null ? new ArrayList<>(names) : new ArrayList<>();
     }
 
     public String getPrimaryName(int bookNumber, String userLanguage, String moduleLanguage) {
-        Map<String, Object> bookData = languageAwareMapping.get(bookNumber);
+        Map<String, List<String>> bookData = languageAwareMapping.get(bookNumber);
         if (bookData == null) {
             return "";
         }
 
-        // Priority 1: User-specified language
-        if (userLanguage != null && !userLanguage.trim().isEmpty()) {
-            List<String> userLanguageNames = (List<String>) bookData.get(userLanguage);
-            if (userLanguageNames != null && !userLanguageNames.isEmpty()) {
-                return userLanguageNames.get(0);
-            }
-        }
-
-        // Priority 2: Module language
-        if (moduleLanguage != null && !moduleLanguage.trim().isEmpty() && !moduleLanguage.equals(userLanguage)) {
-            List<String> moduleLanguageNames = (List<String>) bookData.get(moduleLanguage);
-            if (moduleLanguageNames != null && !moduleLanguageNames.isEmpty()) {
-                return moduleLanguageNames.get(0);
-            }
-        }
-
-        // Priority 3: Default fallback
-        List<String> fallbackNames = (List<String>) bookData.get(DEFAULT_FALLBACK);
-        if (fallbackNames != null && !fallbackNames.isEmpty()) {
-            return fallbackNames.get(0);
-        }
-
-        // Priority 4: English names
-        if (!"en".equals(userLanguage) && !"en".equals(moduleLanguage)) {
-            List<String> englishNames = (List<String>) bookData.get("en");
-            if (englishNames != null && !englishNames.isEmpty()) {
-                return englishNames.get(0);
-            }
-        }
-        return "";
+        List<String> names = resolveNames(bookData, userLanguage, moduleLanguage);
+        return names != null ? names.get(0) : "";
     }
 
     public String getPrimaryName(int bookNumber, String moduleLanguage) {
@@ -395,14 +437,14 @@ public class BookMapper {
     }
 
     public String getPrimaryAbbreviation(int bookNumber, String userLanguage, String moduleLanguage) {
-        Map<String, Object> bookData = languageAwareMapping.get(bookNumber);
+        Map<String, List<String>> bookData = languageAwareMapping.get(bookNumber);
         if (bookData == null) {
             return "";
         }
 
         // Priority 1: User-specified language
         if (userLanguage != null && !userLanguage.trim().isEmpty()) {
-            List<String> userLanguageNames = (List<String>) bookData.get(userLanguage);
+            List<String> userLanguageNames = bookData.get(userLanguage);
             if (userLanguageNames != null && userLanguageNames.size() > 1) {
                 return userLanguageNames.get(1); // Second name is typically the abbreviation
             }
@@ -410,14 +452,14 @@ public class BookMapper {
 
         // Priority 2: Module language
         if (moduleLanguage != null && !moduleLanguage.trim().isEmpty() && !moduleLanguage.equals(userLanguage)) {
-            List<String> moduleLanguageNames = (List<String>) bookData.get(moduleLanguage);
+            List<String> moduleLanguageNames = bookData.get(moduleLanguage);
             if (moduleLanguageNames != null && moduleLanguageNames.size() > 1) {
                 return moduleLanguageNames.get(1);
             }
         }
 
         // Priority 3: Default fallback
-        List<String> fallbackNames = (List<String>) bookData.get(DEFAULT_FALLBACK);
+        List<String> fallbackNames = bookData.get(DEFAULT_FALLBACK);
         if (fallbackNames != null && fallbackNames.size() > 1) {
             return fallbackNames.get(1);
         } else if (fallbackNames != null && !fallbackNames.isEmpty()) {
@@ -426,7 +468,7 @@ public class BookMapper {
 
         // Priority 4: English names
         if (!"en".equals(userLanguage) && !"en".equals(moduleLanguage)) {
-            List<String> englishNames = (List<String>) bookData.get("en");
+            List<String> englishNames = bookData.get("en");
             if (englishNames != null && englishNames.size() > 1) {
                 return englishNames.get(1);
             } else if (englishNames != null && !englishNames.isEmpty()) {
@@ -466,7 +508,7 @@ public class BookMapper {
     }
 
     public List<String> getAllBookNames(int bookNumber, BookMapper moduleBookMapper, String moduleLanguage, String userLanguage) {
-        List<String> allNames = new ArrayList<>();
+        Set<String> allNames = new LinkedHashSet<>();
 
         // Add default names
         Optional<Book> defaultBook = this.getBook(bookNumber);
@@ -478,34 +520,67 @@ public class BookMapper {
         if (moduleBookMapper != null) {
             Optional<Book> moduleBook = moduleBookMapper.getBook(bookNumber);
             if (moduleBook.isPresent()) {
-                for (String name : moduleBook.get().getShortNames()) {
-                    if (!allNames.contains(name)) {
-                        allNames.add(name);
-                    }
-                }
+                allNames.addAll(moduleBook.get().getShortNames());
             }
         }
 
         // Add module language names
         if (moduleLanguage != null && !moduleLanguage.trim().isEmpty()) {
-            List<String> moduleLangNames = this.getNamesForLanguage(bookNumber, moduleLanguage);
-            for (String name : moduleLangNames) {
-                if (!allNames.contains(name)) {
-                    allNames.add(name);
-                }
-            }
+            allNames.addAll(this.getNamesForLanguage(bookNumber, moduleLanguage));
         }
 
         // Add user language names
         if (userLanguage != null && !userLanguage.trim().isEmpty()) {
-            List<String> userLangNames = this.getNamesForLanguage(bookNumber, userLanguage);
-            for (String name : userLangNames) {
-                if (!allNames.contains(name)) {
-                    allNames.add(name);
-                }
+            allNames.addAll(this.getNamesForLanguage(bookNumber, userLanguage));
+        }
+        return new ArrayList<>(allNames);
+    }
+
+    /**
+     * Returns a view with every book of this mapping resolved for the given language pair.
+     * Views are built once per (userLanguage, moduleLanguage) pair and reused while the
+     * same module mapper is passed in, so output code only does an array lookup per verse.
+     *
+     * @param userLanguage User-specified language, may be null.
+     * @param moduleLanguage Module's language, may be null.
+     * @param moduleBookMapper Mapper built from the module's own abbreviations, may be null.
+     * @return An immutable ResolvedBookView.
+     */
+    public ResolvedBookView resolve(String userLanguage, String moduleLanguage, BookMapper moduleBookMapper) {
+        String key = userLanguage + "|" + moduleLanguage;
+        ResolvedBookView view = resolvedViews.get(key);
+        if (view != null && view.isBuiltWith(moduleBookMapper)) {
+            return view;
+        }
+
+        int maxBookNumber = 0;
+        for (Integer bookNumber : booksByNumber.keySet()) maxBookNumber = Math.max(maxBookNumber, bookNumber);
+        for (Integer bookNumber : languageAwareMapping.keySet()) maxBookNumber = Math.max(maxBookNumber, bookNumber);
+        if (moduleBookMapper != null) {
+            for (Integer bookNumber : moduleBookMapper.booksByNumber.keySet()) maxBookNumber = Math.max(maxBookNumber, bookNumber);
+        }
+
+        ResolvedBookView.Entry[] entries = new ResolvedBookView.Entry[maxBookNumber + 1];
+        for (int bookNumber = 0; bookNumber <= maxBookNumber; bookNumber++) {
+            Optional<Book> book = getBook(bookNumber, userLanguage, moduleLanguage);
+            if (!book.isPresent()) {
+                book = getBook(bookNumber);
             }
+            Optional<Book> moduleBook = moduleBookMapper != null ? moduleBookMapper.getBook(bookNumber) : Optional.empty();
+            if (!book.isPresent() && !moduleBook.isPresent()) continue;
+
+            entries[bookNumber] = new ResolvedBookView.Entry(
+                bookNumber,
+                book.orElse(null),
+                getPrimaryAbbreviation(bookNumber, userLanguage, moduleLanguage),
+                moduleBook.orElse(null),
+                getAllBookNames(bookNumber, moduleBookMapper, moduleLanguage, userLanguage)
+            );
         }
-        return allNames;
+
+        view = new ResolvedBookView(entries, moduleBookMapper);
+        resolvedViews.put(key, view);
+        return view;
     }
 
     // Validate if a mapping file has valid JSON format
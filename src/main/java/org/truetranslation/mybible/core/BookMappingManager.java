@@ -61,8 +61,7 @@ public class BookMappingManager {
         Path mappingFile = null;
         int verbosity = configManager.getVerbosity();
 
-        ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(configDir);
-        ResourceBundle bundle = externalLoader.getBundle("i18n.messages");
+        ResourceBundle bundle = AppContext.get().messages();
 
         if (prefix != null && !prefix.trim().isEmpty()) {
             // A custom prefix is provided. Attempt to use the custom file.
@@ -74,15 +73,8 @@ public class BookMappingManager {
                     mappingFile = prefixPath;
                 }
             } else {
-                // Try <config>/<prefix>_mapping.json first, then <config>/mapping/<prefix>_mapping.json
-                Path candidate1 = configDir.resolve(prefix + "_mapping.json");
-                Path candidate2 = configDir.resolve("mapping").resolve(prefix + "_mapping.json");
-
-                if (Files.exists(candidate1)) {
-                    mappingFile = candidate1;
-                } else if (Files.exists(candidate2)) {
-                    mappingFile = candidate2;
-                }
+                // <config>/<prefix>_mapping.json first, then <config>/mapping/<prefix>_mapping.json
+                mappingFile = AppContext.get().resources().current().mappingFile(prefix);
             }
 
             if (mappingFile == null) {
@@ -113,7 +105,8 @@ public class BookMappingManager {
             MappingBackupManager.performSilentBackup(configDir);
         }
 
-        // Load the mapper from the determined file path with optional language support.
-        return new BookMapper(Files.newInputStream(mappingFile), userLanguage, moduleLanguage);
+        // Load the mapper from the determined file path with optional language support,
+        // using the compiled mapping cache when it matches the file's contents.
+        return MappingCache.loadBookMapper(configDir, mappingFile, userLanguage, moduleLanguage);
     }
 }
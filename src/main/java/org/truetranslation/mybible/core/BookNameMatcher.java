@@ -0,0 +1,278 @@
+package org.truetranslation.mybible.core;
+
+import org.truetranslation.mybible.core.model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Typo-tolerant lookup over the names of a BookMapper.
+ * Names are normalized (lowercase, no spaces or dots) and stored in a BK-tree for
+ * bounded edit-distance queries and in a sorted array for prefix queries.
+ */
+public class BookNameMatcher {
+
+    public static class Suggestion {
+        public final String name;
+        public final Book book;
+        public final int distance;
+        public final boolean prefixMatch;
+
+        Suggestion(String name, Book book, int distance, boolean prefixMatch) {
+            this.name = name;
+            this.book = book;
+            this.distance = distance;
+            this.prefixMatch = prefixMatch;
+        }
+
+        @Override
+        public String toString() { return name; }
+    }
+
+    private static class Node {
+        final String key;
+        final char[] chars;
+        final String name;
+        final List<Book> books = new ArrayList<>(1);
+        // Children indexed by their edit distance to this node
+        Node[] children;
+
+        Node(String key, String name, Book book) {
+            this.key = key;
+            this.chars = key.toCharArray();
+            this.name = name;
+            this.books.add(book);
+        }
+    }
+
+    private static class Match {
+        final Node node;
+        final int distance;
+
+        Match(Node node, int distance) {
+            this.node = node;
+            this.distance = distance;
+        }
+    }
+
+    private static final Comparator<Suggestion> RANKING = Comparator
+        .comparing((Suggestion s) -> !s.prefixMatch)
+        .thenComparingInt(s -> s.distance)
+        .thenComparingInt(s -> s.name.length())
+        .thenComparing(s -> s.name);
+
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    private final Node root;
+    private final String[] sortedKeys;
+    private final Node[] sortedNodes;
+
+    public BookNameMatcher(Map<String, Book> booksByName) {
+        Map<String, Node> nodesByKey = new TreeMap<>();
+        for (Map.Entry<String, Book> entry : booksByName.entrySet()) {
+            String key = normalize(entry.getKey());
+            if (key.isEmpty()) continue;
+            Node node = nodesByKey.get(key);
+            if (node == null) {
+                nodesByKey.put(key, new Node(key, entry.getKey(), entry.getValue()));
+            } else if (node.books.stream().noneMatch(b -> b.getBookNumber() == entry.getValue().getBookNumber())) {
+                node.books.add(entry.getValue());
+            }
+        }
+
+        this.sortedKeys = nodesByKey.keySet().toArray(new String[0]);
+        this.sortedNodes = nodesByKey.values().toArray(new Node[0]);
+
+        Node treeRoot = null;
+        for (Node node : sortedNodes) {
+            if (treeRoot == null) {
+                treeRoot = node;
+            } else {
+                insert(treeRoot, node);
+            }
+        }
+        this.root = treeRoot;
+    }
+
+    /**
+     * Returns the book whose name is closest to the input, if exactly one book is
+     * closest and the edit distance stays within the bound for the input's length.
+     */
+    public Optional<Book> findBest(String input) {
+        String query = normalize(input);
+        if (query.isEmpty() || root == null) return Optional.empty();
+
+        List<Match> matches = new ArrayList<>();
+        int best = search(query, maxDistanceFor(query.length()), matches);
+
+        Book found = null;
+        for (Match match : matches) {
+            if (match.distance != best) continue;
+            for (Book book : match.node.books) {
+                if (found == null) {
+                    found = book;
+                } else if (found.getBookNumber() != book.getBookNumber()) {
+                    return Optional.empty(); // ambiguous
+                }
+            }
+        }
+        if (found != null || query.length() < MIN_PREFIX_LENGTH) {
+            return Optional.ofNullable(found);
+        }
+
+        // A truncated name is accepted when every name it starts belongs to the same book
+        for (int i = lowerBound(query); i < sortedKeys.length && sortedKeys[i].startsWith(query); i++) {
+            for (Book book : sortedNodes[i].books) {
+                if (found == null) {
+                    found = book;
+                } else if (found.getBookNumber() != book.getBookNumber()) {
+                    return Optional.empty();
+                }
+            }
+        }
+        return Optional.ofNullable(found);
+    }
+
+    /**
+     * Ranked suggestions for an input: names starting with it first (shortest first),
+     * then names within the edit-distance bound. At most one suggestion per book.
+     */
+    public List<Suggestion> suggest(String input, int limit) {
+        String query = normalize(input);
+        if (query.isEmpty() || root == null || limit <= 0) return new ArrayList<>();
+
+        List<Suggestion> candidates = new ArrayList<>();
+        int from = lowerBound(query);
+        for (int i = from; i < sortedKeys.length && sortedKeys[i].startsWith(query); i++) {
+            for (Book book : sortedNodes[i].books) {
+                candidates.add(new Suggestion(sortedNodes[i].name, book, 0, true));
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        search(query, maxDistanceFor(query.length()), matches);
+        for (Match match : matches) {
+            if (match.node.key.startsWith(query)) continue;
+            for (Book book : match.node.books) {
+                candidates.add(new Suggestion(match.node.name, book, match.distance, false));
+            }
+        }
+
+        candidates.sort(RANKING);
+        Map<Integer, Suggestion> perBook = new LinkedHashMap<>();
+        for (Suggestion suggestion : candidates) {
+            perBook.putIfAbsent(suggestion.book.getBookNumber(), suggestion);
+            if (perBook.size() >= limit) break;
+        }
+        return new ArrayList<>(perBook.values());
+    }
+
+    static String normalize(String name) {
+        if (name == null) return "";
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '.' || Character.isWhitespace(c)) continue;
+            sb.append(c);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // Short abbreviations are too close to each other to allow typos
+    static int maxDistanceFor(int length) {
+        if (length <= 2) return 0;
+        if (length <= 5) return 1;
+        return 2;
+    }
+
+    private void insert(Node parent, Node node) {
+        int[][] rows = newRows(node.chars.length);
+        while (true) {
+            int d = distance(node.chars, parent.chars, Integer.MAX_VALUE, rows);
+            if (parent.children == null || parent.children.length <= d) {
+                parent.children = Arrays.copyOf(parent.children != null ? parent.children : new Node[0], d + 1);
+            }
+            Node child = parent.children[d];
+            if (child == null) {
+                parent.children[d] = node;
+                return;
+            }
+            parent = child;
+        }
+    }
+
+    // Collects nodes within maxDistance of the query and returns the smallest distance seen
+    private int search(String query, int maxDistance, List<Match> results) {
+        char[] chars = query.toCharArray();
+        int[][] rows = newRows(chars.length);
+        int best = Integer.MAX_VALUE;
+        Node[] stack = new Node[16];
+        int size = 0;
+        stack[size++] = root;
+        while (size > 0) {
+            Node node = stack[--size];
+            // Exact distances are only needed up to the last child range this node can reach
+            int childCount = node.children != null ? node.children.length : 0;
+            int cutoff = Math.max(maxDistance, childCount - 1 + maxDistance);
+            int d = distance(chars, node.chars, cutoff, rows);
+            if (d <= maxDistance) {
+                results.add(new Match(node, d));
+                best = Math.min(best, d);
+            }
+            if (childCount == 0) continue;
+            int last = Math.min(childCount - 1, d + maxDistance);
+            for (int k = Math.max(0, d - maxDistance); k <= last; k++) {
+                Node child = node.children[k];
+                if (child == null) continue;
+                if (size == stack.length) stack = Arrays.copyOf(stack, size * 2);
+                stack[size++] = child;
+            }
+        }
+        return best;
+    }
+
+    private int lowerBound(String query) {
+        int index = Arrays.binarySearch(sortedKeys, query);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    static int distance(String a, String b) {
+        return distance(a.toCharArray(), b.toCharArray(), Integer.MAX_VALUE, newRows(a.length()));
+    }
+
+    private static int[][] newRows(int length) {
+        return new int[][] { new int[length + 1], new int[length + 1] };
+    }
+
+    // Levenshtein distance of a and b; returns cutoff + 1 as soon as it must exceed cutoff
+    private static int distance(char[] a, char[] b, int cutoff, int[][] rows) {
+        if (Math.abs(a.length - b.length) > cutoff) return cutoff + 1;
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int i = 0; i <= a.length; i++) previous[i] = i;
+
+        for (int j = 1; j <= b.length; j++) {
+            current[0] = j;
+            char cb = b[j - 1];
+            int rowMin = current[0];
+            for (int i = 1; i <= a.length; i++) {
+                int cost = a[i - 1] == cb ? 0 : 1;
+                int value = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                current[i] = value;
+                if (value < rowMin) rowMin = value;
+            }
+            if (rowMin > cutoff) return cutoff + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[a.length];
+    }
+}
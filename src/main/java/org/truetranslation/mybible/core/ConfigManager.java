@@ -1,80 +1,182 @@
 package org.truetranslation.mybible.core;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.ResourceBundle;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 public class ConfigManager {
     private final Path configFilePath;
+    private final Path lockFilePath;
     private Map<String, Object> config;
-    private static ResourceBundle bundle;
+    // Keys changed since the last write; only these are merged into the file
+    private final Set<String> dirtyKeys = new HashSet<>();
+    private ScheduledFuture<?> pendingWrite;
     private static final String DEFAULT_FORMAT = "%A %c:%v %t";
+    private static final long WRITE_DELAY_MS = 500;
 
-    public ConfigManager() {
+    // Writes from this process are serialized here, and across processes by the file lock
+    private static final Object WRITE_LOCK = new Object();
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "config-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Loads the configuration from a directory. Use AppContext.get().config() for the shared instance.
+     * Changes are written shortly after they are made, and at the latest when the JVM exits.
+     */
+    ConfigManager(Path configDir) {
+        this.configFilePath = configDir.resolve("config.json");
+        this.lockFilePath = configDir.resolve("config.json.lock");
+        loadConfig();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "config-flush"));
+    }
+
+    static Path resolveDefaultConfigDir() {
         String userHome = System.getProperty("user.home");
-        Path configDir;
         String os = System.getProperty("os.name").toLowerCase();
         if (os.contains("win")) {
-            configDir = Paths.get(System.getenv("APPDATA"), "mybible-cli-java");
+            return Paths.get(System.getenv("APPDATA"), "mybible-cli-java");
         } else if (os.contains("mac")) {
-            configDir = Paths.get(userHome, "Library", "Application Support", "mybible-cli-java");
+            return Paths.get(userHome, "Library", "Application Support", "mybible-cli-java");
         } else {
-            configDir = Paths.get(userHome, ".config", "mybible-cli-java");
+            return Paths.get(userHome, ".config", "mybible-cli-java");
         }
-        ExternalResourceBundleLoader loader = new ExternalResourceBundleLoader(configDir);
-        bundle = loader.getBundle("i18n.messages");
-        this.configFilePath = configDir.resolve("config.json");
-        loadConfig();
     }
 
-    private void loadConfig() {
-        try {
-            if (Files.exists(configFilePath)) {
-                Reader reader = Files.newBufferedReader(configFilePath);
-                Type type = new TypeToken<Map<String, Object>>() {}.getType();
-                config = new Gson().fromJson(reader, type);
-                reader.close();
-                if (config == null) config = new HashMap<>();
-            } else {
-                config = new HashMap<>();
-                saveConfig();
-            }
-        } catch (IOException e) {
-            config = new HashMap<>();
-        }
+    private synchronized void loadConfig() {
+        boolean exists = Files.exists(configFilePath);
+        config = exists ? readConfigFile() : null;
+        if (config == null) config = new HashMap<>();
         // Ensure default values are present
         config.putIfAbsent("modules_path", "");
         config.putIfAbsent("format_string", DEFAULT_FORMAT);
         config.putIfAbsent("last_used_module", "");
         config.putIfAbsent("verbosity", 1.0);
+        if (!exists) {
+            writeMerged(new HashMap<>(config), true);
+        }
     }
 
-    private void saveConfig() {
-        try {
-            Files.createDirectories(configFilePath.getParent());
-            Writer writer = Files.newBufferedWriter(configFilePath);
-            new Gson().toJson(config, writer);
-            writer.close();
-        } catch (IOException e) {
-            String message = MessageFormat.format(bundle.getString("error.config.save"), e.getMessage());
-            System.err.println(message);
+    private Map<String, Object> readConfigFile() {
+        try (Reader reader = Files.newBufferedReader(configFilePath)) {
+            Type type = new TypeToken<Map<String, Object>>() {}.getType();
+            return new Gson().fromJson(reader, type);
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    private synchronized void set(String key, Object value) {
+        if (Objects.equals(config.get(key), value)) return;
+        config.put(key, value);
+        dirtyKeys.add(key);
+        if (pendingWrite == null || pendingWrite.isDone()) {
+            pendingWrite = WRITER.schedule(this::flush, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes pending changes now. Under a lock on config.json.lock, the file is read again and
+     * only the keys changed here are replaced, so concurrent processes do not undo each other's
+     * settings; the result goes to a temp file that is renamed over config.json.
+     */
+    public void flush() {
+        Map<String, Object> changes = new HashMap<>();
+        synchronized (this) {
+            if (dirtyKeys.isEmpty()) return;
+            for (String key : dirtyKeys) {
+                changes.put(key, config.get(key));
+            }
+            dirtyKeys.clear();
+        }
+
+        // Retried with the next change, or at exit
+        if (!writeMerged(changes, false)) {
+            synchronized (this) {
+                dirtyKeys.addAll(changes.keySet());
+            }
+        }
+    }
+
+    // Defaults only fill keys that are missing, in case another process created the file meanwhile
+    private boolean writeMerged(Map<String, Object> changes, boolean defaultsOnly) {
+        synchronized (WRITE_LOCK) {
+            Path tempFile = null;
+            try {
+                Files.createDirectories(configFilePath.getParent());
+                try (FileChannel channel = FileChannel.open(lockFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    // Released when the channel closes
+                    channel.lock();
+                    Map<String, Object> merged = Files.exists(configFilePath) ? readConfigFile() : null;
+                    if (merged == null) merged = new HashMap<>();
+                    if (defaultsOnly) {
+                        changes.forEach(merged::putIfAbsent);
+                    } else {
+                        merged.putAll(changes);
+                    }
+
+                    tempFile = Files.createTempFile(configFilePath.getParent(), "config", ".tmp");
+                    try (Writer writer = Files.newBufferedWriter(tempFile)) {
+                        new Gson().toJson(merged, writer);
+                    }
+                    try {
+                        Files.move(tempFile, configFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(tempFile, configFilePath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                String message = MessageFormat.format(AppContext.get().messages().getString("error.config.save"), e.getMessage());
+                System.err.println(message);
+                return false;
+            } finally {
+                if (tempFile != null) {
+                    try {
+                        Files.deleteIfExists(tempFile);
+                    } catch (IOException e) {
+                        // Nothing left to clean up once the move succeeded
+                    }
+                }
+            }
         }
     }
 
-    public void resetToDefaults() {
+    public synchronized void resetToDefaults() {
+        dirtyKeys.clear();
         try {
-            Files.deleteIfExists(configFilePath);
+            // Under the same locks as writes, so the file is not deleted while one is replacing it
+            synchronized (WRITE_LOCK) {
+                Files.createDirectories(configFilePath.getParent());
+                try (FileChannel channel = FileChannel.open(lockFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    channel.lock();
+                    Files.deleteIfExists(configFilePath);
+                }
+            }
             Path configDir = configFilePath.getParent();
             if (configDir != null) {
                 Files.deleteIfExists(configDir.resolve("default_mapping.json"));
@@ -95,24 +197,38 @@ public class ConfigManager {
             config = new HashMap<>();
             loadConfig();
         } catch (IOException e) {
-            String message = MessageFormat.format(bundle.getString("error.config.delete"), e.getMessage());
+            String message = MessageFormat.format(AppContext.get().messages().getString("error.config.delete"), e.getMessage());
             System.err.println(message);
         }
     }
 
-    public String getModulesPath() { return (String) config.get("modules_path"); }
-    public void setModulesPath(String path) { config.put("modules_path", path); saveConfig(); }
-    public String getFormatString() { return (String) config.get("format_string"); }
-    public void setFormatString(String format) { config.put("format_string", format); saveConfig(); }
-    public String getLastUsedModule() { return (String) config.get("last_used_module"); }
-    public void setLastUsedModule(String moduleName) { config.put("last_used_module", moduleName); saveConfig(); }
+    public synchronized String getModulesPath() { return (String) config.get("modules_path"); }
+    public void setModulesPath(String path) { set("modules_path", path); }
+    public synchronized String getFormatString() { return (String) config.get("format_string"); }
+    public void setFormatString(String format) { set("format_string", format); }
+    public synchronized String getLastUsedModule() { return (String) config.get("last_used_module"); }
+    public void setLastUsedModule(String moduleName) { set("last_used_module", moduleName); }
     public Path getDefaultConfigDir() { return configFilePath.getParent(); }
+    public int getDownloadParallelism() { return getPositiveInt("download_parallelism", 4); }
+    public int getDownloadsPerHost() { return getPositiveInt("downloads_per_host", 2); }
+
+    public synchronized boolean isStreamingInstall() { return Boolean.TRUE.equals(config.get("streaming_install")); }
+
+    // Size limit of the module download cache in megabytes; 0 keeps nothing after an install
+    public synchronized long getDownloadCacheLimitMb() {
+        Object value = config.get("download_cache_limit_mb");
+        return value instanceof Number && ((Number) value).longValue() >= 0 ? ((Number) value).longValue() : 512;
+    }
+
+    private synchronized int getPositiveInt(String key, int defaultValue) {
+        Object value = config.get(key);
+        return value instanceof Number && ((Number) value).intValue() > 0 ? ((Number) value).intValue() : defaultValue;
+    }
 
-    public int getVerbosity() {
+    public synchronized int getVerbosity() {
         return ((Double) config.getOrDefault("verbosity", 1.0)).intValue();
     }
     public void setVerbosity(int level) {
-        config.put("verbosity", (double) level);
-        saveConfig();
+        set("verbosity", (double) level);
     }
 }
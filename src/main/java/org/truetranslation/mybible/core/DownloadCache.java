@@ -0,0 +1,308 @@
+package org.truetranslation.mybible.core;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store for downloaded module zips.
+ * Zips are kept as blobs/<first two hex digits>/<sha256>.zip, so identical downloads share
+ * one file whatever their name, and an index (index.json) maps (module, version, URL) to
+ * a blob. Least recently used blobs are evicted once the store grows past its size limit.
+ * Changes to the index are made under a lock on index.json.lock, against the index as
+ * read again under that lock, so processes sharing the cache keep each other's entries.
+ */
+final class DownloadCache {
+
+    static final String INDEX_FILE = "index.json";
+    private static final String LOCK_FILE = "index.json.lock";
+    // Partial downloads are kept this long for resuming
+    private static final long STAGING_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+    // Blobs the index does not list are left alone this long, in case they are being stored
+    private static final long UNKNOWN_FILE_GRACE_MS = 60L * 60 * 1000;
+
+    private static class Entry {
+        String module;
+        String version;
+        String url;
+        String hash;
+    }
+
+    private static class Blob {
+        long size;
+        long lastUsed;
+    }
+
+    private static class Index {
+        List<Entry> entries = new ArrayList<>();
+        Map<String, Blob> blobs = new HashMap<>();
+    }
+
+    private final Path root;
+    private final Path blobsDir;
+    private final Path stagingDir;
+    private final Path indexFile;
+    private final Path lockFile;
+    private final long maxBytes;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private final Map<String, Entry> entriesByKey = new HashMap<>();
+    // Blob uses seen by lookup(), written with the next change to the index
+    private final Map<String, Long> pendingUses = new HashMap<>();
+    private Index index;
+
+    private interface IndexUpdate {
+        void apply() throws IOException;
+    }
+
+    DownloadCache(Path root, long maxBytes) {
+        this.root = root;
+        this.blobsDir = root.resolve("blobs");
+        this.stagingDir = root.resolve("staging");
+        this.indexFile = root.resolve(INDEX_FILE);
+        this.lockFile = root.resolve(LOCK_FILE);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached zip for a module version downloaded from any of the URLs,
+     * or null. A hit counts as a use for eviction.
+     */
+    synchronized Path lookup(String module, String version, List<String> urls) {
+        load();
+        for (String url : urls) {
+            Entry entry = entriesByKey.get(key(module, version, url));
+            if (entry == null) continue;
+            Blob blob = index.blobs.get(entry.hash);
+            Path path = blobPath(entry.hash);
+            try {
+                if (blob != null && Files.size(path) == blob.size) {
+                    blob.lastUsed = System.currentTimeMillis();
+                    pendingUses.put(entry.hash, blob.lastUsed);
+                    return path;
+                }
+            } catch (IOException e) {
+                // Missing or unreadable blob; treat as a miss
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Where a download for this module version should be written before store() is called.
+     * The name is stable, so an interrupted download can be resumed by the next attempt.
+     */
+    Path stagingPath(String module, String version) throws IOException {
+        Files.createDirectories(stagingDir);
+        String safeName = (module + "-" + version).replaceAll("[^\\p{L}\\p{N}._-]", "_");
+        return stagingDir.resolve(safeName + ".zip");
+    }
+
+    /**
+     * Moves a downloaded zip into the store and indexes it under all given URLs. The
+     * SHA-256 is computed from the file unless the caller already has it.
+     * Returns the path of the blob, which stays valid until the next evict().
+     */
+    Path store(String module, String version, List<String> urls, Path file, String sha256) throws IOException {
+        String hash = sha256 != null ? sha256 : sha256(file);
+        long size = Files.size(file);
+        Path target = blobPath(hash);
+        Files.createDirectories(target.getParent());
+
+        update(() -> {
+            if (Files.exists(target) && Files.size(target) == size) {
+                Files.delete(file);
+            } else {
+                try {
+                    Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            Blob blob = index.blobs.computeIfAbsent(hash, h -> new Blob());
+            blob.size = size;
+            blob.lastUsed = System.currentTimeMillis();
+            for (String url : urls) {
+                Entry entry = entriesByKey.get(key(module, version, url));
+                if (entry == null) {
+                    entry = new Entry();
+                    entry.module = module;
+                    entry.version = version;
+                    entry.url = url;
+                    index.entries.add(entry);
+                    entriesByKey.put(key(module, version, url), entry);
+                }
+                entry.hash = hash;
+            }
+        });
+        return target;
+    }
+
+    /**
+     * Removes least recently used blobs until the store fits its limit, drops index entries
+     * whose blob is gone and deletes files the index does not list once they are an hour old,
+     * along with partial downloads nobody resumed for a week.
+     */
+    void evict() throws IOException {
+        update(this::evictLocked);
+    }
+
+    private void evictLocked() throws IOException {
+        index.blobs.keySet().removeIf(hash -> !Files.exists(blobPath(hash)));
+
+        List<Map.Entry<String, Blob>> byAge = new ArrayList<>(index.blobs.entrySet());
+        byAge.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+        long total = byAge.stream().mapToLong(e -> e.getValue().size).sum();
+        for (Map.Entry<String, Blob> oldest : byAge) {
+            if (total <= maxBytes) break;
+            Files.deleteIfExists(blobPath(oldest.getKey()));
+            index.blobs.remove(oldest.getKey());
+            total -= oldest.getValue().size;
+        }
+
+        index.entries.removeIf(entry -> !index.blobs.containsKey(entry.hash));
+        rebuildKeys();
+        removeUnknownFiles();
+    }
+
+    /**
+     * Forgets everything in memory; used after the cache directory was deleted.
+     */
+    synchronized void reset() {
+        index = null;
+        entriesByKey.clear();
+        pendingUses.clear();
+    }
+
+    // Reads the index again under the file lock, applies the change and saves the result
+    private synchronized void update(IndexUpdate change) throws IOException {
+        Files.createDirectories(root);
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Released when the channel closes
+            channel.lock();
+            index = null;
+            load();
+            for (Map.Entry<String, Long> use : pendingUses.entrySet()) {
+                Blob blob = index.blobs.get(use.getKey());
+                if (blob != null) blob.lastUsed = Math.max(blob.lastUsed, use.getValue());
+            }
+            pendingUses.clear();
+            change.apply();
+            save();
+        }
+    }
+
+    private void removeUnknownFiles() throws IOException {
+        if (!Files.isDirectory(blobsDir)) return;
+        Set<Path> known = new HashSet<>();
+        for (String hash : index.blobs.keySet()) known.add(blobPath(hash));
+        long unknownCutoff = System.currentTimeMillis() - UNKNOWN_FILE_GRACE_MS;
+        try (Stream<Path> walk = Files.walk(blobsDir)) {
+            for (Path path : (Iterable<Path>) walk::iterator) {
+                if (Files.isRegularFile(path) && !known.contains(path)
+                        && Files.getLastModifiedTime(path).toMillis() < unknownCutoff) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        if (Files.isDirectory(stagingDir)) {
+            long cutoff = System.currentTimeMillis() - STAGING_MAX_AGE_MS;
+            try (DirectoryStream<Path> staged = Files.newDirectoryStream(stagingDir)) {
+                for (Path path : staged) {
+                    if (Files.getLastModifiedTime(path).toMillis() < cutoff) Files.deleteIfExists(path);
+                }
+            }
+        }
+        // Zips cached by file name before this store existed have no version to index them by
+        try (DirectoryStream<Path> legacy = Files.newDirectoryStream(root, "*.zip")) {
+            for (Path path : legacy) Files.deleteIfExists(path);
+        }
+    }
+
+    private void load() {
+        if (index != null) return;
+        index = new Index();
+        if (Files.exists(indexFile)) {
+            try {
+                Index loaded = gson.fromJson(Files.readString(indexFile, StandardCharsets.UTF_8), Index.class);
+                if (loaded != null && loaded.entries != null && loaded.blobs != null) index = loaded;
+            } catch (IOException | JsonParseException e) {
+                // An unreadable index only costs downloads; unknown blobs go at the next evict()
+            }
+        }
+        rebuildKeys();
+    }
+
+    private void rebuildKeys() {
+        entriesByKey.clear();
+        for (Entry entry : index.entries) {
+            entriesByKey.put(key(entry.module, entry.version, entry.url), entry);
+        }
+    }
+
+    private void save() throws IOException {
+        Files.createDirectories(root);
+        Path tempFile = Files.createTempFile(root, INDEX_FILE, ".tmp");
+        try {
+            Files.writeString(tempFile, gson.toJson(index), StandardCharsets.UTF_8);
+            try {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private Path blobPath(String hash) {
+        return blobsDir.resolve(hash.substring(0, 2)).resolve(hash + ".zip");
+    }
+
+    private static String key(String module, String version, String url) {
+        return module + '\n' + version + '\n' + url;
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 algorithm not available", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // Reading file to update digest
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
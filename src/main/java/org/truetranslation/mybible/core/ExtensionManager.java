@@ -4,26 +4,36 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
@@ -38,6 +48,7 @@ public class ExtensionManager {
     private final Path guiThemesDir;
     private final Path sourcesDir;
     private final Path cacheDir;
+    private final ExtensionRegistryCache registryCache;
     private final ResourceBundle bundle;
     private final int verbosity;
 
@@ -45,6 +56,13 @@ public class ExtensionManager {
     private static final Set<String> PROTECTED_FILES = Set.of("default_mapping.json");
     private static final String DEFAULT_REGISTRY_URL = "https://raw.githubusercontent.com/mybible-cli/mybible-cli-extensions/main/registry.json";
     private static final String DEFAULT_REGISTRY_NAME = "mybible-cli.extregistry";
+    private static final String VALIDATORS_FILENAME = "validators.json";
+    private static final Duration REGISTRY_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+        .connectTimeout(REGISTRY_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build();
 
     private static final Map<String, Set<String>> ALLOWED_FILE_TYPES = Map.of(
         "theme", Set.of("themes"),
@@ -64,9 +82,9 @@ public class ExtensionManager {
         this.guiThemesDir = configDir.resolve("gui_themes");
         this.sourcesDir = configDir.resolve("sources");
         this.cacheDir = configDir.resolve(".cache").resolve("extensions");
+        this.registryCache = new ExtensionRegistryCache(cacheDir, VALIDATORS_FILENAME);
 
-        ExternalResourceBundleLoader loader = new ExternalResourceBundleLoader(configDir);
-        this.bundle = loader.getBundle("i18n.messages");
+        this.bundle = AppContext.get().messages();
 
         initializeDefaultRegistry();
     }
@@ -83,6 +101,11 @@ public class ExtensionManager {
         }
     }
 
+    /**
+     * Downloads all configured registries at once. A registry whose cached copy is still
+     * current (304 for the stored ETag or Last-Modified) is kept as it is. Registries that
+     * fail keep their cached copy; the failures are reported together after the others finish.
+     */
     public void updateRegistries() throws IOException {
         Files.createDirectories(cacheDir);
 
@@ -90,9 +113,13 @@ public class ExtensionManager {
             throw new IOException(bundle.getString("error.extensionmgr.noSources"));
         }
 
+        Map<String, RegistryValidators> validators = loadValidators();
+        Map<String, CompletableFuture<RegistryValidators>> requests = new LinkedHashMap<>();
+
         try (Stream<Path> files = Files.list(sourcesDir)) {
             List<Path> registries = files
                 .filter(p -> p.toString().endsWith(".extregistry"))
+                .sorted()
                 .collect(Collectors.toList());
 
             for (Path registryFile : registries) {
@@ -104,58 +131,127 @@ public class ExtensionManager {
                         bundle.getString("msg.extensionmgr.updatingRegistry"), registryName));
                 }
 
-                downloadRegistry(url, registryName);
+                requests.put(registryName, fetchRegistry(url, registryName, validators.get(registryName)));
+            }
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<RegistryValidators>> request : requests.entrySet()) {
+            try {
+                validators.put(request.getKey(), request.getValue().join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                failures.add(MessageFormat.format(
+                    bundle.getString("error.extensionmgr.registryDownloadFailed"), request.getKey(),
+                    cause.getMessage() != null ? cause.getMessage() : cause.toString()));
             }
         }
 
+        validators.keySet().retainAll(requests.keySet());
+        saveValidators(validators);
+
+        if (!failures.isEmpty()) {
+            throw new IOException(String.join(System.lineSeparator(), failures));
+        }
+
         if (verbosity > 0) {
             System.out.println(bundle.getString("msg.extensionmgr.registryUpdateComplete"));
         }
     }
 
-    private void downloadRegistry(String urlString, String registryName) throws IOException {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(10000);
-        conn.setReadTimeout(10000);
+    /**
+     * Requests a registry, sending the stored validators when they were recorded for the
+     * same URL and the cached copy still exists. A 200 is checked to parse before it
+     * replaces the cached copy. Completes with the validators to store for the registry.
+     */
+    private CompletableFuture<RegistryValidators> fetchRegistry(String urlString, String registryName, RegistryValidators cached) {
+        Path cachePath = cacheDir.resolve(registryName + ".json");
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(urlString))
+                .timeout(REGISTRY_TIMEOUT)
+                .header("User-Agent", "mybible-cli-java/1.5")
+                .GET();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (cached != null && urlString.equals(cached.url) && Files.exists(cachePath)) {
+            if (cached.etag != null) {
+                request.header("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                request.header("If-Modified-Since", cached.lastModified);
+            }
+        }
 
-        try (InputStream in = conn.getInputStream()) {
-            Path cachePath = cacheDir.resolve(registryName + ".json");
-            Files.copy(in, cachePath, StandardCopyOption.REPLACE_EXISTING);
+        return HTTP_CLIENT.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(response -> {
+                if (response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    return cached;
+                }
+                if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                    throw new CompletionException(new IOException(MessageFormat.format(
+                        bundle.getString("error.httpError"), response.statusCode(), urlString)));
+                }
+                try {
+                    saveRegistry(cachePath, response.body());
+                } catch (IOException | JsonSyntaxException e) {
+                    throw new CompletionException(e);
+                }
+                RegistryValidators result = new RegistryValidators();
+                result.url = urlString;
+                result.etag = response.headers().firstValue("ETag").orElse(null);
+                result.lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+                return result;
+            });
+    }
+
+    private void saveRegistry(Path cachePath, byte[] body) throws IOException {
+        new Gson().fromJson(new String(body, StandardCharsets.UTF_8), ExtensionRegistry.class);
+
+        Path tempFile = Files.createTempFile(cacheDir, cachePath.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tempFile, body);
+            try {
+                Files.move(tempFile, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, cachePath, StandardCopyOption.REPLACE_EXISTING);
+            }
         } finally {
-            conn.disconnect();
+            Files.deleteIfExists(tempFile);
         }
     }
 
-    public List<RegistryExtension> listAvailableExtensions(String typeFilter, String nameFilter, String languageFilter) throws IOException {
-        List<RegistryExtension> allExtensions = new ArrayList<>();
+    private Map<String, RegistryValidators> loadValidators() {
+        Path validatorsPath = cacheDir.resolve(VALIDATORS_FILENAME);
+        if (!Files.exists(validatorsPath)) {
+            return new HashMap<>();
+        }
+        try {
+            String json = Files.readString(validatorsPath, StandardCharsets.UTF_8);
+            Map<String, RegistryValidators> validators = new Gson().fromJson(json,
+                new TypeToken<Map<String, RegistryValidators>>(){}.getType());
+            return validators != null ? validators : new HashMap<>();
+        } catch (Exception e) {
+            return new HashMap<>();
+        }
+    }
 
+    private void saveValidators(Map<String, RegistryValidators> validators) throws IOException {
+        Files.writeString(cacheDir.resolve(VALIDATORS_FILENAME), new Gson().toJson(validators), StandardCharsets.UTF_8);
+    }
+
+    public List<RegistryExtension> listAvailableExtensions(String typeFilter, String nameFilter, String languageFilter) throws IOException {
         if (!Files.exists(cacheDir)) {
             throw new IOException(bundle.getString("error.extensionmgr.noCachedRegistries"));
         }
 
-        try (Stream<Path> files = Files.list(cacheDir)) {
-            List<Path> cacheFiles = files
-                .filter(p -> p.toString().endsWith(".json"))
-                .collect(Collectors.toList());
-
-            for (Path cacheFile : cacheFiles) {
-                try {
-                    String json = Files.readString(cacheFile, StandardCharsets.UTF_8);
-                    ExtensionRegistry registry = new Gson().fromJson(json, ExtensionRegistry.class);
-
-                    if (registry.extensions != null) {
-                        allExtensions.addAll(registry.extensions);
-                    }
-                } catch (Exception e) {
-                    if (verbosity > 0) {
-                        System.err.println(MessageFormat.format(
-                            bundle.getString("error.extensionmgr.registryReadFailed"), e.getMessage()));
-                    }
-                }
+        List<RegistryExtension> allExtensions = registryCache.load((cacheFile, e) -> {
+            if (verbosity > 0) {
+                System.err.println(MessageFormat.format(
+                    bundle.getString("error.extensionmgr.registryReadFailed"), e.getMessage()));
             }
-        }
+        });
 
         Stream<RegistryExtension> stream = allExtensions.stream();
 
@@ -404,7 +500,8 @@ public class ExtensionManager {
             manifest = validateExtension(zipFile, fileContents);
         }
 
-        checkFileConflicts(manifest);
+        ExtensionOwnershipIndex owners = ExtensionOwnershipIndex.load(extensionsDir);
+        checkFileConflicts(manifest, owners);
 
         Files.createDirectories(extensionsDir);
         Files.createDirectories(i18nDir);
@@ -413,6 +510,8 @@ public class ExtensionManager {
 
         installFiles(manifest, fileContents);
         saveManifest(manifest);
+        owners.add(manifest);
+        AppContext.get().resources().reload();
 
         if (verbosity > 0) {
             System.out.println(MessageFormat.format(
@@ -436,10 +535,12 @@ public class ExtensionManager {
 
         ExtensionManifest manifest = loadManifest(manifestPath);
         Path configDir = configManager.getDefaultConfigDir();
+        ExtensionOwnershipIndex owners = ExtensionOwnershipIndex.load(extensionsDir);
 
         if (manifest.files != null) {
             if (manifest.files.mappings != null) {
                 for (String mappingFile : manifest.files.mappings) {
+                    if (!ownedBy(owners, manifest.name, FileType.MAPPING, mappingFile)) continue;
                     Path mappingPath = configDir.resolve("mapping").resolve(mappingFile);
                     Files.deleteIfExists(mappingPath);
                     if (verbosity > 0) {
@@ -451,6 +552,7 @@ public class ExtensionManager {
 
             if (manifest.files.resources != null) {
                 for (String resourceFile : manifest.files.resources) {
+                    if (!ownedBy(owners, manifest.name, FileType.RESOURCE, resourceFile)) continue;
                     Path resourcePath = i18nDir.resolve(resourceFile);
                     Files.deleteIfExists(resourcePath);
                     if (verbosity > 0) {
@@ -462,6 +564,7 @@ public class ExtensionManager {
 
             if (manifest.files.themes != null) {
                 for (String themeFile : manifest.files.themes) {
+                    if (!ownedBy(owners, manifest.name, FileType.THEME, themeFile)) continue;
                     Path themePath = guiThemesDir.resolve(themeFile);
                     Files.deleteIfExists(themePath);
                     if (verbosity > 0) {
@@ -473,6 +576,8 @@ public class ExtensionManager {
         }
 
         Files.delete(manifestPath);
+        owners.remove(manifest.name);
+        AppContext.get().resources().reload();
 
         if (verbosity > 0) {
             System.out.println(MessageFormat.format(
@@ -480,8 +585,14 @@ public class ExtensionManager {
         }
     }
 
-    private void checkFileConflicts(ExtensionManifest manifest) 
-            throws IOException, ExtensionValidationException {
+    // Files another extension has since taken over are left in place
+    private static boolean ownedBy(ExtensionOwnershipIndex owners, String extensionName, FileType fileType, String fileName) {
+        String owner = owners.owner(fileType, fileName);
+        return owner == null || owner.equals(extensionName);
+    }
+
+    private void checkFileConflicts(ExtensionManifest manifest, ExtensionOwnershipIndex owners)
+            throws ExtensionValidationException {
         List<String> conflicts = new ArrayList<>();
         Path configDir = configManager.getDefaultConfigDir();
 
@@ -501,7 +612,7 @@ public class ExtensionManager {
 
                 Path targetPath = configDir.resolve("mapping").resolve(mappingFile);
                 if (Files.exists(targetPath)) {
-                    String owner = findFileOwner(mappingFile, FileType.MAPPING);
+                    String owner = owners.owner(FileType.MAPPING, mappingFile);
                     if (owner != null && !owner.equals(manifest.name)) {
                         conflicts.add(MessageFormat.format(
                             bundle.getString("error.extensionmgr.fileConflict"),
@@ -517,7 +628,7 @@ public class ExtensionManager {
             for (String resourceFile : manifest.files.resources) {
                 Path targetPath = i18nDir.resolve(resourceFile);
                 if (Files.exists(targetPath)) {
-                    String owner = findFileOwner(resourceFile, FileType.RESOURCE);
+                    String owner = owners.owner(FileType.RESOURCE, resourceFile);
                     if (owner != null && !owner.equals(manifest.name)) {
                         conflicts.add(MessageFormat.format(
                             bundle.getString("error.extensionmgr.fileConflict"),
@@ -533,7 +644,7 @@ public class ExtensionManager {
             for (String themeFile : manifest.files.themes) {
                 Path targetPath = guiThemesDir.resolve(themeFile);
                 if (Files.exists(targetPath)) {
-                    String owner = findFileOwner(themeFile, FileType.THEME);
+                    String owner = owners.owner(FileType.THEME, themeFile);
                     if (owner != null && !owner.equals(manifest.name)) {
                         conflicts.add(MessageFormat.format(
                             bundle.getString("error.extensionmgr.fileConflict"),
@@ -552,46 +663,6 @@ public class ExtensionManager {
         }
     }
 
-    private String findFileOwner(String filename, FileType fileType) throws IOException {
-        if (!Files.exists(extensionsDir)) {
-            return null;
-        }
-
-        try (Stream<Path> files = Files.list(extensionsDir)) {
-            List<Path> manifestFiles = files
-                .filter(p -> p.toString().endsWith(".json"))
-                .collect(Collectors.toList());
-
-            for (Path manifestPath : manifestFiles) {
-                try {
-                    ExtensionManifest manifest = loadManifest(manifestPath);
-                    if (manifest.files == null) continue;
-
-                    List<String> filesToCheck = null;
-                    switch (fileType) {
-                        case MAPPING:
-                            filesToCheck = manifest.files.mappings;
-                            break;
-                        case RESOURCE:
-                            filesToCheck = manifest.files.resources;
-                            break;
-                        case THEME:
-                            filesToCheck = manifest.files.themes;
-                            break;
-                    }
-
-                    if (filesToCheck != null && filesToCheck.contains(filename)) {
-                        return manifest.name;
-                    }
-                } catch (Exception e) {
-                    // Skip invalid manifests
-                }
-            }
-        }
-
-        return null;
-    }
-
     private ExtensionManifest validateExtension(ZipFile zipFile, Map<String, byte[]> fileContents) 
             throws IOException, ExtensionValidationException {
 
@@ -864,6 +935,13 @@ public class ExtensionManager {
         }
     }
 
+    // Conditional request headers recorded for a cached registry
+    private static class RegistryValidators {
+        String url;
+        String etag;
+        String lastModified;
+    }
+
     public static class ExtensionInfo {
         public final ExtensionManifest manifest;
         public final Path manifestPath;
@@ -896,7 +974,7 @@ public class ExtensionManager {
         }
     }
 
-    private enum FileType {
+    enum FileType {
         MAPPING,
         RESOURCE,
         THEME
@@ -0,0 +1,193 @@
+package org.truetranslation.mybible.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.truetranslation.mybible.core.ExtensionManager.ExtensionManifest;
+import org.truetranslation.mybible.core.ExtensionManager.FileType;
+
+/**
+ * Which installed extension owns each mapping, resource and theme file. The index is
+ * stored next to the manifests together with the size and modification time of every
+ * manifest it was built from, and is rebuilt from the manifests when those no longer
+ * match (a missing index, or a manifest changed outside install and uninstall).
+ * An install or uninstall loads it once and asks the loaded copy about each file.
+ * When two manifests list the same file, the one installed last owns it.
+ */
+final class ExtensionOwnershipIndex {
+
+    static final String INDEX_FILE = "owners.idx";
+
+    private static class IndexData {
+        // Manifest file name to "size:mtime"
+        Map<String, String> manifests = new TreeMap<>();
+        // "TYPE/file name" to extension name
+        Map<String, String> owners = new TreeMap<>();
+    }
+
+    private final Path extensionsDir;
+    private final Path indexFile;
+    private IndexData data;
+
+    private ExtensionOwnershipIndex(Path extensionsDir) {
+        this.extensionsDir = extensionsDir;
+        this.indexFile = extensionsDir.resolve(INDEX_FILE);
+    }
+
+    /**
+     * Reads the index of an extensions directory, rebuilding it if it does not match
+     * the manifests there.
+     */
+    static ExtensionOwnershipIndex load(Path extensionsDir) throws IOException {
+        ExtensionOwnershipIndex index = new ExtensionOwnershipIndex(extensionsDir);
+        index.data = index.readOrRebuild();
+        return index;
+    }
+
+    /**
+     * Returns the name of the extension that installed the file, or null if none did.
+     */
+    String owner(FileType fileType, String fileName) {
+        return data.owners.get(key(fileType, fileName));
+    }
+
+    /**
+     * Records the files of a manifest that has just been saved, replacing whatever the
+     * same extension owned before.
+     */
+    void add(ExtensionManifest manifest) throws IOException {
+        data.owners.values().removeIf(manifest.name::equals);
+        forEachFile(manifest, (fileType, fileName) -> data.owners.put(key(fileType, fileName), manifest.name));
+        save(data);
+    }
+
+    /**
+     * Forgets the files of an extension whose manifest has just been deleted.
+     */
+    void remove(String extensionName) throws IOException {
+        data.owners.values().removeIf(extensionName::equals);
+        save(data);
+    }
+
+    private IndexData readOrRebuild() throws IOException {
+        Map<String, String> stamps = manifestStamps();
+        IndexData stored = read();
+        if (stored != null && stamps.equals(stored.manifests)) {
+            return stored;
+        }
+
+        // Oldest manifest first, so that later installs take over shared files as add() does
+        List<Path> manifestFiles = stamps.keySet().stream()
+            .map(extensionsDir::resolve)
+            .sorted(Comparator.comparingLong(ExtensionOwnershipIndex::lastModified))
+            .collect(Collectors.toList());
+        IndexData rebuilt = new IndexData();
+        Gson gson = new Gson();
+        for (Path manifestFile : manifestFiles) {
+            try {
+                String json = Files.readString(manifestFile, StandardCharsets.UTF_8);
+                ExtensionManifest manifest = gson.fromJson(json, ExtensionManifest.class);
+                if (manifest == null || manifest.name == null) continue;
+                forEachFile(manifest, (fileType, fileName) -> rebuilt.owners.put(key(fileType, fileName), manifest.name));
+            } catch (IOException | JsonSyntaxException e) {
+                // Skip invalid manifests
+            }
+        }
+        if (Files.isDirectory(extensionsDir)) {
+            save(rebuilt);
+        } else {
+            rebuilt.manifests = stamps;
+        }
+        return rebuilt;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private IndexData read() {
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try {
+            IndexData stored = new Gson().fromJson(Files.readString(indexFile, StandardCharsets.UTF_8), IndexData.class);
+            return stored != null && stored.manifests != null && stored.owners != null ? stored : null;
+        } catch (IOException | JsonSyntaxException e) {
+            return null;
+        }
+    }
+
+    // Stamps are taken after the manifests changed, so the saved index matches them
+    private void save(IndexData index) throws IOException {
+        index.manifests = manifestStamps();
+        Path tempFile = Files.createTempFile(extensionsDir, INDEX_FILE, ".tmp");
+        try {
+            Files.writeString(tempFile, new Gson().toJson(index), StandardCharsets.UTF_8);
+            try {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        data = index;
+    }
+
+    private Map<String, String> manifestStamps() throws IOException {
+        Map<String, String> stamps = new TreeMap<>();
+        if (!Files.isDirectory(extensionsDir)) {
+            return stamps;
+        }
+        try (Stream<Path> files = Files.list(extensionsDir)) {
+            List<Path> manifestFiles = files
+                .filter(p -> p.toString().endsWith(".json"))
+                .collect(Collectors.toList());
+            for (Path manifestFile : manifestFiles) {
+                stamps.put(manifestFile.getFileName().toString(),
+                    Files.size(manifestFile) + ":" + Files.getLastModifiedTime(manifestFile).toMillis());
+            }
+        }
+        return stamps;
+    }
+
+    private interface FileVisitor {
+        void visit(FileType fileType, String fileName);
+    }
+
+    private static void forEachFile(ExtensionManifest manifest, FileVisitor visitor) {
+        if (manifest.files == null) return;
+        Map<FileType, List<String>> declared = new HashMap<>();
+        declared.put(FileType.MAPPING, manifest.files.mappings);
+        declared.put(FileType.RESOURCE, manifest.files.resources);
+        declared.put(FileType.THEME, manifest.files.themes);
+        for (Map.Entry<FileType, List<String>> entry : declared.entrySet()) {
+            if (entry.getValue() == null) continue;
+            for (String fileName : entry.getValue()) {
+                visitor.visit(entry.getKey(), fileName);
+            }
+        }
+    }
+
+    private static String key(FileType fileType, String fileName) {
+        return fileType.name() + "/" + fileName;
+    }
+}
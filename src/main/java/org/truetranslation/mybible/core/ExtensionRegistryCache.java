@@ -0,0 +1,271 @@
+package org.truetranslation.mybible.core;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.truetranslation.mybible.core.ExtensionManager.ExtensionFiles;
+import org.truetranslation.mybible.core.ExtensionManager.ExtensionRegistry;
+import org.truetranslation.mybible.core.ExtensionManager.RegistryExtension;
+
+/**
+ * Parsed extension registries. The extensions of all cached registry files are kept in
+ * a binary snapshot that records the size and modification time of every file it was
+ * built from; while those match, listing extensions reads the snapshot (or, within one
+ * process, the copy in memory) instead of parsing each registry's JSON again.
+ */
+final class ExtensionRegistryCache {
+
+    static final String SNAPSHOT_FILE = "registries.bin";
+    private static final int MAGIC = 0x4d424552;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final class Stamp {
+        final String fileName;
+        final long size;
+        final long modified;
+
+        Stamp(String fileName, long size, long modified) {
+            this.fileName = fileName;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Stamp)) return false;
+            Stamp other = (Stamp) o;
+            return fileName.equals(other.fileName) && size == other.size && modified == other.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileName, size, modified);
+        }
+    }
+
+    private final Path cacheDir;
+    private final Path snapshotFile;
+    private final Set<String> excluded;
+    private List<Stamp> loadedStamps;
+    private List<RegistryExtension> loaded;
+
+    /**
+     * @param excludedFiles names of .json files in the directory that are not registries
+     */
+    ExtensionRegistryCache(Path cacheDir, String... excludedFiles) {
+        this.cacheDir = cacheDir;
+        this.snapshotFile = cacheDir.resolve(SNAPSHOT_FILE);
+        this.excluded = Set.of(excludedFiles);
+    }
+
+    /**
+     * Returns the extensions of all cached registries. Registries that cannot be parsed are
+     * passed to onError and skipped; the snapshot is then not written, so they are retried.
+     */
+    synchronized List<RegistryExtension> load(BiConsumer<Path, Exception> onError) throws IOException {
+        List<Stamp> stamps = currentStamps();
+        if (loaded != null && stamps.equals(loadedStamps)) {
+            return new ArrayList<>(loaded);
+        }
+
+        List<RegistryExtension> extensions = readSnapshot(stamps);
+        if (extensions == null) {
+            extensions = new ArrayList<>();
+            boolean complete = true;
+            Gson gson = new Gson();
+            for (Stamp stamp : stamps) {
+                Path file = cacheDir.resolve(stamp.fileName);
+                try {
+                    ExtensionRegistry registry = gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), ExtensionRegistry.class);
+                    if (registry != null && registry.extensions != null) {
+                        extensions.addAll(registry.extensions);
+                    }
+                } catch (Exception e) {
+                    complete = false;
+                    onError.accept(file, e);
+                }
+            }
+            if (complete) {
+                writeSnapshot(stamps, extensions);
+            }
+        }
+
+        loadedStamps = stamps;
+        loaded = extensions;
+        return new ArrayList<>(extensions);
+    }
+
+    private List<Stamp> currentStamps() throws IOException {
+        List<Stamp> stamps = new ArrayList<>();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            List<Path> registries = files
+                .filter(p -> p.getFileName().toString().endsWith(".json") && !excluded.contains(p.getFileName().toString()))
+                .sorted()
+                .collect(Collectors.toList());
+            for (Path file : registries) {
+                stamps.add(new Stamp(file.getFileName().toString(), Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+            }
+        }
+        return stamps;
+    }
+
+    // Returns null when there is no snapshot, or it was built from other files
+    private List<RegistryExtension> readSnapshot(List<Stamp> stamps) {
+        if (!Files.exists(snapshotFile)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            int stampCount = in.readInt();
+            if (stampCount != stamps.size()) return null;
+            for (Stamp stamp : stamps) {
+                if (!stamp.equals(new Stamp(readString(in), in.readLong(), in.readLong()))) return null;
+            }
+            int count = in.readInt();
+            List<RegistryExtension> extensions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                extensions.add(readExtension(in));
+            }
+            return extensions;
+        } catch (IOException | RuntimeException e) {
+            // A damaged snapshot is rebuilt from the registries
+            return null;
+        }
+    }
+
+    private void writeSnapshot(List<Stamp> stamps, List<RegistryExtension> extensions) {
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(cacheDir, SNAPSHOT_FILE, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(stamps.size());
+                for (Stamp stamp : stamps) {
+                    writeString(out, stamp.fileName);
+                    out.writeLong(stamp.size);
+                    out.writeLong(stamp.modified);
+                }
+                out.writeInt(extensions.size());
+                for (RegistryExtension extension : extensions) {
+                    writeExtension(out, extension);
+                }
+            }
+            try {
+                Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // Without a snapshot the registries are parsed again next time
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    // Left for the next write to replace
+                }
+            }
+        }
+    }
+
+    private static void writeExtension(DataOutputStream out, RegistryExtension extension) throws IOException {
+        writeString(out, extension.name);
+        writeString(out, extension.version);
+        writeString(out, extension.type);
+        writeString(out, extension.description);
+        writeString(out, extension.author);
+        out.writeBoolean(extension.files != null);
+        if (extension.files != null) {
+            writeList(out, extension.files.mappings);
+            writeList(out, extension.files.resources);
+            writeList(out, extension.files.themes);
+        }
+        writeList(out, extension.languages);
+        writeList(out, extension.langCodes);
+        writeString(out, extension.downloadUrl);
+        out.writeBoolean(extension.size != null);
+        if (extension.size != null) {
+            out.writeLong(extension.size);
+        }
+        writeString(out, extension.sha256);
+        writeString(out, extension.publishedDate);
+    }
+
+    private static RegistryExtension readExtension(DataInputStream in) throws IOException {
+        RegistryExtension extension = new RegistryExtension();
+        extension.name = readString(in);
+        extension.version = readString(in);
+        extension.type = readString(in);
+        extension.description = readString(in);
+        extension.author = readString(in);
+        if (in.readBoolean()) {
+            extension.files = new ExtensionFiles();
+            extension.files.mappings = readList(in);
+            extension.files.resources = readList(in);
+            extension.files.themes = readList(in);
+        }
+        extension.languages = readList(in);
+        extension.langCodes = readList(in);
+        extension.downloadUrl = readString(in);
+        extension.size = in.readBoolean() ? in.readLong() : null;
+        extension.sha256 = readString(in);
+        extension.publishedDate = readString(in);
+        return extension;
+    }
+
+    // Strings are stored as their UTF-8 length (-1 for null) and bytes
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeList(DataOutputStream out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) return null;
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+}
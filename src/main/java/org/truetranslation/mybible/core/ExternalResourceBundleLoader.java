@@ -6,45 +6,114 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Locale;
+import java.util.Map;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class ExternalResourceBundleLoader {
 
+    // Process-wide, keyed by bundle directory, base name and locale. An entry is valid while
+    // the directory (entries added or removed) and the file it was read from are unchanged.
+    private static final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
     private final Path configDir;
 
+    private static final class CacheEntry {
+        final FileStamp dirStamp;
+        // Null when the locale has no external override and the classpath bundle is used
+        final Path file;
+        final FileStamp fileStamp;
+        final ResourceBundle bundle;
+
+        CacheEntry(FileStamp dirStamp, Path file, FileStamp fileStamp, ResourceBundle bundle) {
+            this.dirStamp = dirStamp;
+            this.file = file;
+            this.fileStamp = fileStamp;
+            this.bundle = bundle;
+        }
+    }
+
+    private static final class FileStamp {
+        final long lastModified;
+        final long size;
+
+        FileStamp(long lastModified, long size) {
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        static FileStamp of(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileStamp(attributes.lastModifiedTime().toMillis(), attributes.size());
+            } catch (IOException e) {
+                return new FileStamp(-1, -1);
+            }
+        }
+
+        boolean matches(FileStamp other) {
+            return lastModified == other.lastModified && size == other.size;
+        }
+    }
+
     public ExternalResourceBundleLoader(Path configDir) {
         this.configDir = configDir;
     }
 
     // First check external config directory, then fall back to classpath resources.
     public ResourceBundle getBundle(String baseName, Locale locale) {
-        ResourceBundle externalBundle = loadExternalBundle(baseName, locale);
-        if (externalBundle != null) {
-            return externalBundle;
+        int lastDot = baseName.lastIndexOf('.');
+        Path bundleDir = lastDot < 0
+            ? configDir.resolve("resources")
+            : configDir.resolve("resources").resolve(baseName.substring(0, lastDot).replace('.', '/'));
+        String key = bundleDir + "|" + baseName + "|" + locale;
+
+        FileStamp dirStamp = FileStamp.of(bundleDir);
+        CacheEntry cached = cache.get(key);
+        if (cached != null && cached.dirStamp.matches(dirStamp)
+                && (cached.file == null || cached.fileStamp.matches(FileStamp.of(cached.file)))) {
+            return cached.bundle;
         }
 
-        return ResourceBundle.getBundle(baseName, locale);
+        CacheEntry entry = loadExternalBundle(bundleDir, dirStamp, baseName.substring(lastDot + 1), locale);
+        if (entry == null) {
+            entry = new CacheEntry(dirStamp, null, null, ResourceBundle.getBundle(baseName, locale));
+        }
+        cache.put(key, entry);
+        return entry.bundle;
     }
 
     public ResourceBundle getBundle(String baseName) {
         return getBundle(baseName, Locale.getDefault());
     }
 
-    private ResourceBundle loadExternalBundle(String baseName, Locale locale) {
-        String[] filenames = buildFilenames(baseName, locale);
-
-        for (String filename : filenames) {
-            Path bundlePath = configDir.resolve("resources").resolve(filename.replace('.', '/') + ".properties");
+    // Candidates are matched against one listing of the bundle directory
+    private CacheEntry loadExternalBundle(Path bundleDir, FileStamp dirStamp, String simpleName, Locale locale) {
+        if (!Files.isDirectory(bundleDir)) {
+            return null;
+        }
+        Set<String> present;
+        try (Stream<Path> files = Files.list(bundleDir)) {
+            present = files.map(p -> p.getFileName().toString()).collect(Collectors.toSet());
+        } catch (IOException e) {
+            return null;
+        }
 
-            if (Files.exists(bundlePath)) {
-                try (InputStream is = Files.newInputStream(bundlePath);
-                     InputStreamReader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
-                    return new PropertyResourceBundle(reader);
-                } catch (IOException e) {
-                    System.err.println("Failed to load external bundle: " + bundlePath + " - " + e.getMessage());
-                }
+        for (String filename : buildFilenames(simpleName, locale)) {
+            if (!present.contains(filename + ".properties")) continue;
+            Path bundlePath = bundleDir.resolve(filename + ".properties");
+            FileStamp fileStamp = FileStamp.of(bundlePath);
+            try (InputStream is = Files.newInputStream(bundlePath);
+                 InputStreamReader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+                return new CacheEntry(dirStamp, bundlePath, fileStamp, new PropertyResourceBundle(reader));
+            } catch (IOException e) {
+                System.err.println("Failed to load external bundle: " + bundlePath + " - " + e.getMessage());
             }
         }
 
@@ -0,0 +1,257 @@
+package org.truetranslation.mybible.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a compiled binary copy of each mapping file in {@code <config>/cache/mapping},
+ * so BookMapper can be built without parsing the JSON. A cache file is named after a hash
+ * of the mapping's absolute path and is only trusted when its format version and the
+ * SHA-256 of the source file and of the bundled default mapping match, so edited mappings,
+ * newly installed mapping extensions and an upgraded default mapping (which supplies the
+ * primary names a mapping leaves out) are recompiled automatically.
+ */
+public class MappingCache {
+
+    private static final String CACHE_FOLDER = "cache";
+    private static final String MAPPING_FOLDER = "mapping";
+    private static final String CACHE_SUFFIX = ".bin";
+    private static final int MAGIC = 0x4D424D43; // "MBMC"
+    private static final int FORMAT_VERSION = 1;
+    private static final String DEFAULT_MAPPING_RESOURCE = "/default_mapping.json";
+
+    // SHA-256 of the bundled default mapping, read once per process
+    private static volatile byte[] defaultMappingHash;
+
+    // In-process memo for long-running sessions (GUI), validated by mtime and size
+    private static final Map<Path, MemoEntry> memo = new ConcurrentHashMap<>();
+
+    /**
+     * Resolved name tables of a language-aware mapping, independent of any language filter.
+     */
+    static final class Snapshot {
+        final Map<Integer, Map<String, List<String>>> bookTables;
+        final Map<Integer, List<String>> primaryNames;
+
+        Snapshot(Map<Integer, Map<String, List<String>>> bookTables, Map<Integer, List<String>> primaryNames) {
+            this.bookTables = Collections.unmodifiableMap(bookTables);
+            this.primaryNames = Collections.unmodifiableMap(primaryNames);
+        }
+    }
+
+    private static final class MemoEntry {
+        final long lastModified;
+        final long size;
+        final Snapshot snapshot;
+
+        MemoEntry(long lastModified, long size, Snapshot snapshot) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Builds a BookMapper for a mapping file, using the compiled cache when it is current.
+     * Legacy (non-object) or malformed mappings go through the regular JSON constructor,
+     * which keeps its fallback to the default mapping.
+     */
+    public static BookMapper loadBookMapper(Path configDir, Path mappingFile, String userLanguage, String moduleLanguage) throws IOException {
+        Snapshot snapshot = getSnapshot(configDir, mappingFile);
+        if (snapshot == null) {
+            return new BookMapper(Files.newInputStream(mappingFile), userLanguage, moduleLanguage);
+        }
+        return new BookMapper(snapshot, userLanguage, moduleLanguage);
+    }
+
+    private static Snapshot getSnapshot(Path configDir, Path mappingFile) throws IOException {
+        Path key = mappingFile.toAbsolutePath().normalize();
+        long lastModified = Files.getLastModifiedTime(key).toMillis();
+        long size = Files.size(key);
+
+        MemoEntry cached = memo.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.size == size) {
+            return cached.snapshot;
+        }
+
+        byte[] source = Files.readAllBytes(key);
+        byte[] hash = sha256(source, defaultMappingHash());
+        Path cacheFile = configDir.resolve(CACHE_FOLDER).resolve(MAPPING_FOLDER)
+            .resolve(cacheFileName(key));
+
+        Snapshot snapshot = readCache(cacheFile, hash);
+        if (snapshot == null) {
+            snapshot = compile(source);
+            if (snapshot == null) {
+                return null;
+            }
+            writeCache(cacheFile, hash, snapshot);
+        }
+
+        memo.put(key, new MemoEntry(lastModified, size, snapshot));
+        return snapshot;
+    }
+
+    private static Snapshot compile(byte[] source) {
+        try {
+            JsonElement root = new Gson().fromJson(new String(source, StandardCharsets.UTF_8), JsonElement.class);
+            if (root == null || !root.isJsonObject()) {
+                return null;
+            }
+            return BookMapper.compileSnapshot(root.getAsJsonObject());
+        } catch (JsonSyntaxException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static Snapshot readCache(Path cacheFile, byte[] expectedHash) {
+        if (!Files.exists(cacheFile)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            byte[] hash = new byte[in.readUnsignedShort()];
+            in.readFully(hash);
+            if (!Arrays.equals(hash, expectedHash)) {
+                return null;
+            }
+
+            int bookCount = in.readInt();
+            Map<Integer, Map<String, List<String>>> bookTables = new LinkedHashMap<>();
+            Map<Integer, List<String>> primaryNames = new HashMap<>();
+            for (int i = 0; i < bookCount; i++) {
+                int bookNumber = in.readInt();
+                int languageCount = in.readInt();
+                Map<String, List<String>> bookData = new LinkedHashMap<>();
+                for (int j = 0; j < languageCount; j++) {
+                    String language = in.readUTF();
+                    bookData.put(language, readNames(in));
+                }
+                bookTables.put(bookNumber, bookData);
+
+                List<String> primary = readNames(in);
+                if (!primary.isEmpty()) {
+                    primaryNames.put(bookNumber, primary);
+                }
+            }
+            return new Snapshot(bookTables, primaryNames);
+        } catch (IOException e) {
+            // Truncated or corrupt cache file; it will be rewritten
+            return null;
+        }
+    }
+
+    private static void writeCache(Path cacheFile, byte[] hash, Snapshot snapshot) {
+        Path tempFile = null;
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeShort(hash.length);
+                out.write(hash);
+
+                out.writeInt(snapshot.bookTables.size());
+                for (Map.Entry<Integer, Map<String, List<String>>> entry : snapshot.bookTables.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (Map.Entry<String, List<String>> langEntry : entry.getValue().entrySet()) {
+                        out.writeUTF(langEntry.getKey());
+                        writeNames(out, langEntry.getValue());
+                    }
+                    writeNames(out, snapshot.primaryNames.getOrDefault(entry.getKey(), Collections.emptyList()));
+                }
+            }
+            try {
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // The cache is an optimization only; the mapping was already parsed
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    // Left for the next write to replace
+                }
+            }
+        }
+    }
+
+    private static List<String> readNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    // Mappings with the same file name in different directories get separate cache files
+    private static String cacheFileName(Path mappingFile) {
+        byte[] pathHash = sha256(mappingFile.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            name.append(String.format("%02x", pathHash[i]));
+        }
+        return mappingFile.getFileName() + "-" + name + CACHE_SUFFIX;
+    }
+
+    private static byte[] defaultMappingHash() throws IOException {
+        byte[] hash = defaultMappingHash;
+        if (hash == null) {
+            try (InputStream in = MappingCache.class.getResourceAsStream(DEFAULT_MAPPING_RESOURCE)) {
+                hash = sha256(in == null ? new byte[0] : in.readAllBytes());
+            }
+            defaultMappingHash = hash;
+        }
+        return hash;
+    }
+
+    private static byte[] sha256(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
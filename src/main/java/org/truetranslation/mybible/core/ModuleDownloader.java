@@ -0,0 +1,495 @@
+package org.truetranslation.mybible.core;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads module zips. Data goes to a ".part" file next to the destination, which is
+ * resumed with an HTTP Range request when a transfer breaks off and renamed into place
+ * only after the zip opens and its size matches the registry. A ".part.origin" file
+ * records the URL and validator the part came from; it is only resumed from that URL,
+ * with If-Range, so a changed or different file is downloaded again from the start.
+ * Mirrors are tried fastest first; a mirror that fails or serves a bad file is skipped
+ * for the next one.
+ * One instance serves one install batch and limits the connections per host.
+ */
+final class ModuleDownloader {
+
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+    // Resume attempts per mirror before moving on to the next one
+    private static final int RESUME_ATTEMPTS = 3;
+    private static final String PART_SUFFIX = ".part";
+    private static final String ORIGIN_SUFFIX = ".origin";
+    private static final Pattern SIZE_PATTERN = Pattern.compile("(\\d+(?:\\.(\\d+))?)\\s*([KMG]?)B?", Pattern.CASE_INSENSITIVE);
+
+    // Measured latency per host in nanoseconds; kept for the whole session
+    private static final Map<String, Long> HOST_LATENCY = new ConcurrentHashMap<>();
+
+    private final HttpClient httpClient;
+    private final ResourceBundle bundle;
+    private final int connectionsPerHost;
+    private final Map<String, Semaphore> hostSlots = new ConcurrentHashMap<>();
+
+    ModuleDownloader(HttpClient httpClient, ResourceBundle bundle, int connectionsPerHost) {
+        this.httpClient = httpClient;
+        this.bundle = bundle;
+        this.connectionsPerHost = connectionsPerHost;
+    }
+
+    /**
+     * Makes sure a valid copy of the module zip is at destination. An existing file is
+     * kept if it validates; otherwise the mirrors are tried in order of latency.
+     */
+    void download(List<String> urls, String expectedSize, Path destination, ModuleManager.ProgressCallback progressCallback) throws IOException {
+        if (Files.exists(destination)) {
+            try {
+                validate(destination, expectedSize);
+                return;
+            } catch (IOException e) {
+                Files.deleteIfExists(destination);
+            }
+        }
+
+        Path partFile = destination.resolveSibling(destination.getFileName() + PART_SUFFIX);
+        IOException lastError = null;
+        for (String url : orderByLatency(urls)) {
+            try {
+                fetchWithResume(url, partFile, progressCallback);
+                validate(partFile, expectedSize);
+                moveIntoPlace(partFile, destination);
+                return;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                // A broken transfer stays resumable from the same mirror; a bad file is not resumed
+                if (e instanceof InvalidDownloadException) {
+                    deletePart(partFile);
+                }
+                HOST_LATENCY.put(hostOf(url), Long.MAX_VALUE);
+                lastError = new IOException(MessageFormat.format(bundle.getString("error.mirrorFailed"), url, e.getMessage()), e);
+            }
+        }
+        throw lastError != null ? lastError
+            : new IOException(MessageFormat.format(bundle.getString("error.noMirrors"), destination.getFileName()));
+    }
+
+    /**
+     * Reads the zip from the fastest mirror once, handing the bytes to the consumer as
+     * they arrive while also writing them to the ".part" file. Whatever the consumer leaves
+     * unread is copied too. The SHA-256 of the zip is computed on the way, and since the
+     * consumer has read the entries, only the size is checked before the file is moved to
+     * destination, so the zip is not read again. Returns the hex digest, or null without
+     * touching the network when a destination or a partial download already exists,
+     * because download() can then reuse it.
+     */
+    String downloadStreaming(List<String> urls, String expectedSize, Path destination,
+                              ModuleManager.ProgressCallback progressCallback, StreamConsumer consumer) throws IOException {
+        Path partFile = destination.resolveSibling(destination.getFileName() + PART_SUFFIX);
+        List<String> ordered = orderByLatency(urls);
+        if (Files.exists(destination) || Files.exists(partFile) || ordered.isEmpty()) {
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 algorithm not available", e);
+        }
+
+        String url = ordered.get(0);
+        Semaphore slots = hostSlots.computeIfAbsent(hostOf(url), host -> new Semaphore(connectionsPerHost));
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        try {
+            HttpURLConnection conn = open(url, 0);
+            try {
+                int status = conn.getResponseCode();
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("HTTP " + status);
+                }
+                long total = conn.getContentLengthLong();
+                writeOrigin(partFile, url, validatorOf(conn));
+                try (InputStream in = conn.getInputStream();
+                     OutputStream out = Files.newOutputStream(partFile)) {
+                    TeeInputStream tee = new TeeInputStream(in, new DigestOutputStream(out, digest), total, progressCallback);
+                    consumer.accept(tee);
+                    tee.drain();
+                    if (total > 0 && tee.count < total) {
+                        throw new IOException(MessageFormat.format(bundle.getString("error.downloadTruncated"), tee.count, total));
+                    }
+                }
+            } finally {
+                conn.disconnect();
+            }
+        } finally {
+            slots.release();
+        }
+        try {
+            validateSize(partFile, expectedSize);
+        } catch (InvalidDownloadException e) {
+            deletePart(partFile);
+            throw e;
+        }
+        moveIntoPlace(partFile, destination);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    interface StreamConsumer {
+        void accept(InputStream in) throws IOException;
+    }
+
+    private void fetchWithResume(String url, Path partFile, ModuleManager.ProgressCallback progressCallback) throws IOException {
+        Semaphore slots = hostSlots.computeIfAbsent(hostOf(url), host -> new Semaphore(connectionsPerHost));
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        try {
+            // A part from another mirror may be a different build of the zip
+            String[] origin = readOrigin(partFile);
+            if (origin == null || !origin[0].equals(url)) {
+                deletePart(partFile);
+            }
+            IOException lastError = null;
+            for (int attempt = 0; attempt < RESUME_ATTEMPTS; attempt++) {
+                long before = Files.exists(partFile) ? Files.size(partFile) : 0;
+                try {
+                    transfer(url, partFile, before, progressCallback);
+                    return;
+                } catch (InterruptedIOException e) {
+                    if (Thread.currentThread().isInterrupted()) throw e;
+                    lastError = e; // read timeout
+                } catch (IOException e) {
+                    lastError = e;
+                }
+                // Retry only while the connection keeps making progress
+                long after = Files.exists(partFile) ? Files.size(partFile) : 0;
+                if (after <= before) break;
+            }
+            throw lastError;
+        } finally {
+            slots.release();
+        }
+    }
+
+    private void transfer(String urlString, Path partFile, long offset, ModuleManager.ProgressCallback progressCallback) throws IOException {
+        long started = System.nanoTime();
+        String[] origin = offset > 0 ? readOrigin(partFile) : null;
+        HttpURLConnection conn = open(urlString, offset);
+        if (origin != null && !origin[1].isEmpty()) {
+            // The server sends the whole file instead of the range if it changed since
+            conn.setRequestProperty("If-Range", origin[1]);
+        }
+        try {
+            int status = conn.getResponseCode();
+            boolean append;
+            if (status == HttpURLConnection.HTTP_PARTIAL && offset > 0 && rangeStart(conn) == offset) {
+                append = true;
+            } else if (status == HttpURLConnection.HTTP_OK) {
+                append = false;
+                writeOrigin(partFile, urlString, validatorOf(conn));
+            } else if (status == 416 && offset > 0) {
+                // The part file already holds the whole body; validation decides
+                return;
+            } else {
+                throw new IOException("HTTP " + status);
+            }
+            HOST_LATENCY.merge(hostOf(urlString), System.nanoTime() - started, (old, now) -> old == Long.MAX_VALUE ? now : (old + now) / 2);
+
+            long length = conn.getContentLengthLong();
+            long total = length >= 0 ? length + (append ? offset : 0) : -1;
+            long written = append ? offset : 0;
+
+            try (InputStream in = conn.getInputStream();
+                 OutputStream out = append
+                     ? Files.newOutputStream(partFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                     : Files.newOutputStream(partFile)) {
+                byte[] buffer = new byte[8192];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException();
+                    }
+                    out.write(buffer, 0, bytesRead);
+                    written += bytesRead;
+                    if (progressCallback != null && total > 0) {
+                        progressCallback.update((int) Math.min(written, Integer.MAX_VALUE), (int) Math.min(total, Integer.MAX_VALUE),
+                            bundle.getString("msg.downloading"));
+                    }
+                }
+            }
+            if (total > 0 && written < total) {
+                throw new IOException(MessageFormat.format(bundle.getString("error.downloadTruncated"), written, total));
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static HttpURLConnection open(String urlString, long offset) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(urlString).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        conn.setRequestProperty("User-Agent", "mybible-cli-java/1.5");
+        if (offset > 0) {
+            conn.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+        return conn;
+    }
+
+    // A strong ETag, or else Last-Modified; weak ETags cannot be used with If-Range
+    private static String validatorOf(HttpURLConnection conn) {
+        String etag = conn.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        String lastModified = conn.getHeaderField("Last-Modified");
+        return lastModified != null ? lastModified : "";
+    }
+
+    // Returns the URL and validator recorded for a part file, or null if there is none
+    private static String[] readOrigin(Path partFile) {
+        Path originFile = partFile.resolveSibling(partFile.getFileName() + ORIGIN_SUFFIX);
+        try {
+            List<String> lines = Files.readAllLines(originFile, StandardCharsets.UTF_8);
+            return lines.isEmpty() ? null : new String[] { lines.get(0), lines.size() > 1 ? lines.get(1) : "" };
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeOrigin(Path partFile, String url, String validator) throws IOException {
+        Path originFile = partFile.resolveSibling(partFile.getFileName() + ORIGIN_SUFFIX);
+        Files.write(originFile, List.of(url, validator), StandardCharsets.UTF_8);
+    }
+
+    private static void deletePart(Path partFile) throws IOException {
+        Files.deleteIfExists(partFile);
+        Files.deleteIfExists(partFile.resolveSibling(partFile.getFileName() + ORIGIN_SUFFIX));
+    }
+
+    private static long rangeStart(HttpURLConnection conn) {
+        String contentRange = conn.getHeaderField("Content-Range");
+        if (contentRange == null) return -1;
+        Matcher matcher = Pattern.compile("bytes\\s+(\\d+)-").matcher(contentRange);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private void validate(Path file, String expectedSize) throws IOException {
+        validateSize(file, expectedSize);
+        try (ZipFile zip = ZipFile.builder().setFile(file.toFile()).get()) {
+            if (!zip.getEntries().hasMoreElements()) {
+                throw new InvalidDownloadException(bundle.getString("error.downloadEmptyZip"));
+            }
+        } catch (InvalidDownloadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidDownloadException(MessageFormat.format(bundle.getString("error.downloadInvalidZip"), e.getMessage()));
+        }
+    }
+
+    private void validateSize(Path file, String expectedSize) throws IOException {
+        long actual = Files.size(file);
+        long[] range = sizeRange(expectedSize);
+        if (range != null && (actual < range[0] || actual > range[1])) {
+            throw new InvalidDownloadException(MessageFormat.format(bundle.getString("error.downloadSize"), actual, expectedSize));
+        }
+    }
+
+    /**
+     * Accepted byte range for a registry size. Plain numbers are exact; sizes such as
+     * "340K" or "1.2M" are rounded or truncated by the registry, so one unit of the last
+     * digit is allowed either way, with both 1000 and 1024 as the multiplier.
+     */
+    static long[] sizeRange(String size) {
+        if (size == null) return null;
+        Matcher matcher = SIZE_PATTERN.matcher(size.trim());
+        if (!matcher.matches()) return null;
+        double value = Double.parseDouble(matcher.group(1));
+        String unit = matcher.group(3).toUpperCase(Locale.ROOT);
+        if (unit.isEmpty() && matcher.group(2) == null) {
+            return new long[] { (long) value, (long) value };
+        }
+        int power = unit.isEmpty() ? 0 : "KMG".indexOf(unit) + 1;
+        int decimals = matcher.group(2) != null ? matcher.group(2).length() : 0;
+        double step = 1 / Math.pow(10, decimals);
+        return new long[] {
+            (long) Math.floor((value - step) * Math.pow(1000, power)),
+            (long) Math.ceil((value + step) * Math.pow(1024, power))
+        };
+    }
+
+    // Hosts without a measurement are probed with a HEAD request, all at once
+    private List<String> orderByLatency(List<String> urls) {
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(urls));
+        if (unique.size() < 2) return unique;
+
+        List<CompletableFuture<Void>> probes = new ArrayList<>();
+        for (String url : unique) {
+            String host = hostOf(url);
+            if (HOST_LATENCY.containsKey(host)) continue;
+            HttpRequest request;
+            try {
+                request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(PROBE_TIMEOUT)
+                    .header("User-Agent", "mybible-cli-java/1.5")
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+            } catch (IllegalArgumentException e) {
+                HOST_LATENCY.put(host, Long.MAX_VALUE);
+                continue;
+            }
+            long started = System.nanoTime();
+            probes.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    boolean ok = error == null && response.statusCode() < 400;
+                    HOST_LATENCY.putIfAbsent(host, ok ? System.nanoTime() - started : Long.MAX_VALUE);
+                    return null;
+                }));
+        }
+        if (!probes.isEmpty()) {
+            CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0])).join();
+        }
+
+        // Stable sort keeps registry order among equally fast mirrors
+        unique.sort(Comparator.comparingLong(url -> HOST_LATENCY.getOrDefault(hostOf(url), Long.MAX_VALUE)));
+        return unique;
+    }
+
+    private static void moveIntoPlace(Path partFile, Path target) throws IOException {
+        try {
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        deletePart(partFile);
+    }
+
+    static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : "";
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    // Copies everything read through it to out; close() does not close the source
+    private class TeeInputStream extends FilterInputStream {
+        private final OutputStream out;
+        private final long total;
+        private final ModuleManager.ProgressCallback progressCallback;
+        long count;
+
+        TeeInputStream(InputStream in, OutputStream out, long total, ModuleManager.ProgressCallback progressCallback) {
+            super(in);
+            this.out = out;
+            this.total = total;
+            this.progressCallback = progressCallback;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                out.write(b, off, n);
+                count += n;
+                if (progressCallback != null && total > 0) {
+                    progressCallback.update((int) Math.min(count, Integer.MAX_VALUE), (int) Math.min(total, Integer.MAX_VALUE),
+                        bundle.getString("msg.downloading"));
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read == -1) break;
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Copying the rest of the zip
+            }
+        }
+    }
+
+    // The file arrived but is not the module zip; it is not worth resuming
+    private static class InvalidDownloadException extends IOException {
+        InvalidDownloadException(String message) {
+            super(message);
+        }
+    }
+}
@@ -2,17 +2,21 @@ package org.truetranslation.mybible.core;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
+import org.apache.commons.compress.archivers.zip.UnsupportedZipFeatureException;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 
 import java.io.*;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLDecoder;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.security.DigestInputStream;
@@ -21,10 +25,20 @@ import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.sql.DatabaseMetaData;
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -41,6 +55,7 @@ public class ModuleManager {
     private final Path sourcesDir;
     private final Path cacheDir;
     private final Path downloadCacheDir;
+    private final DownloadCache downloadCache;
     private final Path registryCacheDir;
     private final Path cacheDbPath;
     private final Path configFilePath;
@@ -49,6 +64,10 @@ public class ModuleManager {
 
     private final Gson gson;
     private final int verbosity;
+    private int downloadParallelism;
+    private boolean streamingInstall;
+    private final int downloadsPerHost;
+    private boolean searchIndexAvailable;
     private final ResourceBundle bundle;
 
     private static final Map<String, String> DEFAULT_SOURCES = new LinkedHashMap<>();
@@ -63,6 +82,29 @@ public class ModuleManager {
         DEFAULT_SOURCES.put("mybible.zone_test.registry", "https://mybible.zone/repository/registry/registry_test.zip");
     }
 
+    private static final Duration REGISTRY_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REGISTRY_SOURCE_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration REGISTRY_REFRESH_DEADLINE = Duration.ofSeconds(90);
+
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+        .connectTimeout(REGISTRY_CONNECT_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build();
+
+    // Registry bodies are parsed on these threads while they download
+    private static final ExecutorService REGISTRY_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "registry-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Extraction staging lives inside the modules directory so the final move is a rename
+    private static final String STAGING_DIR = ".staging";
+    private static final int EXTRACT_BUFFER_SIZE = 1 << 20;
+    // Per-module caches dropped on install and removal; their .lock files are never deleted,
+    // since another process may hold or be waiting for the lock
+    private static final List<String> MODULE_DATA_SUFFIXES = Arrays.asList(".verseindex.json", ".allverses.json", ".abbr.json");
+
     private static final Set<String> MODULE_TYPES = new HashSet<>(Arrays.asList(
         "commentaries", "crossreferences", "devotions", "dictionary",
         "plan", "subheadings", "bundle"
@@ -73,6 +115,7 @@ public class ModuleManager {
         this.sourcesDir = configDir.resolve("sources");
         this.cacheDir = configDir.resolve(".cache");
         this.downloadCacheDir = cacheDir.resolve("downloads");
+        this.downloadCache = new DownloadCache(downloadCacheDir, configManager.getDownloadCacheLimitMb() * 1024 * 1024);
         this.registryCacheDir = cacheDir.resolve("registries");
         this.cacheDbPath = cacheDir.resolve("cache.db");
         this.configFilePath = configDir.resolve("module_manager_config.json");
@@ -86,9 +129,11 @@ public class ModuleManager {
 
         this.gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
         this.verbosity = verbosity;
+        this.downloadParallelism = configManager.getDownloadParallelism();
+        this.downloadsPerHost = configManager.getDownloadsPerHost();
+        this.streamingInstall = configManager.isStreamingInstall();
 
-        ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(configManager.getDefaultConfigDir());
-        this.bundle = externalLoader.getBundle("i18n.messages");
+        this.bundle = AppContext.get().messages();
 
         ensureDirectories();
         initializeCacheDatabase();
@@ -134,17 +179,156 @@ public class ModuleManager {
                     "module_type TEXT NOT NULL, " +
                     "size TEXT, " +
                     "source_registry TEXT NOT NULL, " +
-                    "PRIMARY KEY (name, update_date, download_url))");
+                    "PRIMARY KEY (name, update_date, download_url, source_registry))");
 
-                stmt.execute("CREATE INDEX IF NOT EXISTS idx_module_name ON cached_modules(name)");
-                stmt.execute("CREATE INDEX IF NOT EXISTS idx_module_type ON cached_modules(module_type)");
-                stmt.execute("CREATE INDEX IF NOT EXISTS idx_language ON cached_modules(language)");
+                // One row per registry URL with the hash of the content last imported from it
+                stmt.execute("CREATE TABLE IF NOT EXISTS registry_sources (" +
+                    "source_registry TEXT PRIMARY KEY, " +
+                    "content_hash TEXT NOT NULL, " +
+                    "updated_at TEXT NOT NULL)");
+                stmt.execute("PRAGMA journal_mode=WAL");
             }
+            migrateCachedModulesKey(conn);
+            try (Statement stmt = conn.createStatement()) {
+                // Lowercase copies of the filter columns, computed on read, with indexes for
+                // grouping and sorting; the primary key already covers lookups by name
+                dropLegacyIndexes(conn);
+                addGeneratedColumn(conn, "name_lc", "lower(name)");
+                addGeneratedColumn(conn, "language_lc", "lower(coalesce(language, ''))");
+                addGeneratedColumn(conn, "type_lc", "lower(module_type)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_cached_name_lc ON cached_modules(name_lc, update_date)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_cached_language_lc ON cached_modules(language_lc, name_lc)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_cached_type_lc ON cached_modules(type_lc, name_lc)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_source_registry ON cached_modules(source_registry)");
+            }
+            searchIndexAvailable = createSearchIndex(conn);
         } catch (SQLException e) {
             throw new IOException(MessageFormat.format(bundle.getString("error.cacheDbInit"), e.getMessage()), e);
         }
     }
 
+    /**
+     * Caches created before source_registry was part of the primary key kept a module listed
+     * by several registries only for the registry that was imported first. The rows are
+     * copied into a table with the new key, and the stored registry hashes are cleared so
+     * that every registry is imported again on the next update.
+     */
+    private static void migrateCachedModulesKey(Connection conn) throws SQLException {
+        if (isKeyedBySource(conn)) {
+            return;
+        }
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            // Taking the write lock first makes a concurrent process wait and then skip the copy
+            stmt.execute("DELETE FROM registry_sources WHERE 0");
+            if (!isKeyedBySource(conn)) {
+                String columns = "name, language, description, update_date, download_url, file_name, module_type, size, source_registry";
+                stmt.execute("DROP TABLE IF EXISTS cached_modules_fts");
+                stmt.execute("CREATE TABLE cached_modules_migrated (" +
+                    "name TEXT NOT NULL, " +
+                    "language TEXT, " +
+                    "description TEXT NOT NULL, " +
+                    "update_date TEXT NOT NULL, " +
+                    "download_url TEXT NOT NULL, " +
+                    "file_name TEXT NOT NULL, " +
+                    "module_type TEXT NOT NULL, " +
+                    "size TEXT, " +
+                    "source_registry TEXT NOT NULL, " +
+                    "PRIMARY KEY (name, update_date, download_url, source_registry))");
+                stmt.execute("INSERT INTO cached_modules_migrated (" + columns + ") SELECT " + columns + " FROM cached_modules");
+                // Dropping the old table also drops its indexes and search triggers, which are created again
+                stmt.execute("DROP TABLE cached_modules");
+                stmt.execute("ALTER TABLE cached_modules_migrated RENAME TO cached_modules");
+                stmt.execute("DELETE FROM registry_sources");
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static boolean isKeyedBySource(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(cached_modules)")) {
+            while (rs.next()) {
+                if ("source_registry".equals(rs.getString("name"))) {
+                    return rs.getInt("pk") > 0;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Indexes on the original columns, replaced by those on the lowercase columns
+    private static void dropLegacyIndexes(Connection conn) throws SQLException {
+        List<String> legacy = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'index' " +
+                 "AND name IN ('idx_module_name', 'idx_module_type', 'idx_language')")) {
+            while (rs.next()) {
+                legacy.add(rs.getString("name"));
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String index : legacy) {
+                stmt.execute("DROP INDEX IF EXISTS " + index);
+            }
+        }
+    }
+
+    private static void addGeneratedColumn(Connection conn, String column, String expression) throws SQLException {
+        // Generated columns are only listed by table_xinfo
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_xinfo(cached_modules)")) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("name"))) return;
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE cached_modules ADD COLUMN " + column + " TEXT GENERATED ALWAYS AS (" + expression + ") VIRTUAL");
+        }
+    }
+
+    /**
+     * Full-text index over name, description and language. The trigram tokenizer answers
+     * the substring filters of the module lists (LIKE '%x%') from the index for patterns of
+     * three or more characters. Triggers keep it in step with cached_modules. Returns false
+     * if this SQLite build has no FTS5 or trigram tokenizer; filters then scan the table.
+     */
+    private boolean createSearchIndex(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            boolean exists;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'cached_modules_fts'")) {
+                exists = rs.next();
+            }
+            if (!exists) {
+                stmt.execute("CREATE VIRTUAL TABLE cached_modules_fts USING fts5(" +
+                    "name, description, language, content='cached_modules', tokenize='trigram')");
+                stmt.execute("INSERT INTO cached_modules_fts(cached_modules_fts) VALUES('rebuild')");
+            }
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS cached_modules_fts_insert AFTER INSERT ON cached_modules BEGIN " +
+                "INSERT INTO cached_modules_fts(rowid, name, description, language) " +
+                "VALUES (new.rowid, new.name, new.description, new.language); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS cached_modules_fts_delete AFTER DELETE ON cached_modules BEGIN " +
+                "INSERT INTO cached_modules_fts(cached_modules_fts, rowid, name, description, language) " +
+                "VALUES ('delete', old.rowid, old.name, old.description, old.language); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS cached_modules_fts_update AFTER UPDATE ON cached_modules BEGIN " +
+                "INSERT INTO cached_modules_fts(cached_modules_fts, rowid, name, description, language) " +
+                "VALUES ('delete', old.rowid, old.name, old.description, old.language); " +
+                "INSERT INTO cached_modules_fts(rowid, name, description, language) " +
+                "VALUES (new.rowid, new.name, new.description, new.language); END");
+            return true;
+        } catch (SQLException e) {
+            if (verbosity > 1) {
+                System.err.println(MessageFormat.format(bundle.getString("error.searchIndex"), e.getMessage()));
+            }
+            return false;
+        }
+    }
+
     private void initializeInstalledDatabase() throws IOException {
         Path installedDbPath = modulePath.resolve("mybible_installed.db");
 
@@ -180,226 +364,359 @@ public class ModuleManager {
         }
     }
 
+    /**
+     * Refreshes the registry cache. Sources whose content is unchanged (304, or the same
+     * SHA-256 as last time) are skipped; changed sources are diffed against their stored
+     * rows. All changes are written in one transaction, and rows of sources that could not
+     * be fetched are kept.
+     */
     public void updateCache(ProgressCallback progressCallback) throws IOException {
         Map<String, String> etagCache = loadEtagCache();
 
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + cacheDbPath);
-             Statement stmt = conn.createStatement()) {
-            stmt.execute("DELETE FROM cached_modules");
-        } catch (SQLException e) {
-            throw new IOException(MessageFormat.format(bundle.getString("error.cacheClear"), e.getMessage()), e);
-        }
-
         List<Path> sourceFiles = new ArrayList<>();
         try (Stream<Path> stream = Files.list(sourcesDir)) {
             sourceFiles = stream.filter(p -> p.getFileName().toString().endsWith(".registry") || p.getFileName().toString().endsWith(".extra")).collect(Collectors.toList());
         }
 
-        AtomicInteger processed = new AtomicInteger(0);
-        int total = sourceFiles.size();
-
+        // All sources are requested at once; each one is parsed and stored on this
+        // thread as soon as it arrives, so a dead mirror only costs its own timeout.
+        BlockingQueue<RegistryFetch> arrived = new LinkedBlockingQueue<>();
+        Set<String> outstanding = new LinkedHashSet<>();
+        Set<String> sourceUrls = new HashSet<>();
+        List<RegistryFetch> fetches = new ArrayList<>();
         for (Path sourceFile : sourceFiles) {
             String fileName = sourceFile.getFileName().toString();
-            if (progressCallback != null) {
-                progressCallback.update(processed.get(), total, MessageFormat.format(bundle.getString("msg.processingSource"), fileName));
+            RegistryFetch fetch = new RegistryFetch(fileName, fileName.endsWith(".registry"), registryCacheDir.resolve(fileName));
+            outstanding.add(fileName);
+            try {
+                fetch.url = Files.readString(sourceFile, StandardCharsets.UTF_8).trim();
+                sourceUrls.add(fetch.url);
+            } catch (IOException e) {
+                fetch.error = e;
+                arrived.add(fetch);
+                continue;
             }
+            fetches.add(fetch);
+            fetchRegistry(fetch, etagCache.get(fetch.url))
+                .orTimeout(REGISTRY_SOURCE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((result, error) -> {
+                    if (error instanceof TimeoutException) {
+                        fetch.cancel();
+                    }
+                    fetch.error = error;
+                    arrived.add(fetch);
+                    return null;
+                });
+        }
 
-            try {
-                String url = Files.readString(sourceFile, StandardCharsets.UTF_8).trim();
-                Path cachedRegPath = registryCacheDir.resolve(fileName);
-                byte[] content = fetchWithEtag(url, cachedRegPath, etagCache);
-                processRegistry(content, url, sourceFile.getFileName().toString().endsWith(".registry"));
-            } catch (Exception e) {
-                if (verbosity > 0) {
-                    System.err.println(MessageFormat.format(bundle.getString("error.sourceProcessing"), fileName, e.getMessage()));
+        Map<String, String> newEtags = new HashMap<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + cacheDbPath)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA synchronous=NORMAL");
+            }
+            conn.setAutoCommit(false);
+            Map<String, String> sourceHashes = loadSourceHashes(conn);
+
+            int processed = 0;
+            int total = sourceFiles.size();
+            long deadline = System.nanoTime() + REGISTRY_REFRESH_DEADLINE.toNanos();
+
+            while (processed < total) {
+                RegistryFetch fetch;
+                try {
+                    fetch = arrived.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (fetch == null) {
+                    break;
+                }
+                outstanding.remove(fetch.fileName);
+                processed++;
+                if (progressCallback != null) {
+                    progressCallback.update(processed, total, MessageFormat.format(bundle.getString("msg.processingSource"), fetch.fileName));
+                }
+
+                Savepoint savepoint = null;
+                try {
+                    if (fetch.error != null) {
+                        throw fetch.error;
+                    }
+                    String storedHash = sourceHashes.get(fetch.url);
+                    if (fetch.notModified) {
+                        if (storedHash != null) {
+                            continue;
+                        }
+                        try (InputStream in = Files.newInputStream(fetch.cachedPath)) {
+                            readRegistry(fetch, in, false);
+                        }
+                    }
+                    if (!fetch.hash.equals(storedHash)) {
+                        savepoint = conn.setSavepoint();
+                        syncSourceModules(conn, fetch.url, fetch.modules);
+                        saveSourceHash(conn, fetch.url, fetch.hash);
+                        conn.releaseSavepoint(savepoint);
+                    }
+                    fetch.modules = null;
+                    if (fetch.etag != null) {
+                        newEtags.put(fetch.url, fetch.etag);
+                    }
+                } catch (Throwable e) {
+                    if (savepoint != null) {
+                        conn.rollback(savepoint);
+                    }
+                    if (verbosity > 0) {
+                        System.err.println(MessageFormat.format(bundle.getString("error.sourceProcessing"), fetch.fileName, describeFetchError(e)));
+                    }
+                }
+            }
+
+            removeStaleSources(conn, sourceUrls);
+            conn.commit();
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format(bundle.getString("error.cacheInsert"), e.getMessage()), e);
+        }
+
+        if (!outstanding.isEmpty()) {
+            for (RegistryFetch fetch : fetches) {
+                if (outstanding.contains(fetch.fileName)) fetch.cancel();
+            }
+            if (verbosity > 0) {
+                for (String fileName : outstanding) {
+                    System.err.println(MessageFormat.format(bundle.getString("error.sourceProcessing"), fileName,
+                        bundle.getString("error.sourceDeadline")));
                 }
             }
-            processed.incrementAndGet();
         }
 
+        // ETags are only kept for registries whose content is committed
+        etagCache.putAll(newEtags);
         saveEtagCache(etagCache);
         if (verbosity > 0) {
             System.out.println(bundle.getString("msg.cacheUpdateComplete"));
         }
     }
 
-    private byte[] fetchWithEtag(String urlString, Path cachedPath, Map<String, String> etagCache) throws IOException {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestProperty("User-Agent", "mybible-cli-java/1.5");
+    /**
+     * Requests a registry, sending the cached ETag when the cached copy still exists.
+     * A 304 completes without content (the cached copy is current). A 200 is parsed while
+     * it downloads, and the cached copy is replaced once the whole body has been read.
+     */
+    private CompletableFuture<RegistryFetch> fetchRegistry(RegistryFetch fetch, String cachedEtag) {
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(fetch.url))
+                .timeout(REGISTRY_SOURCE_TIMEOUT)
+                .header("User-Agent", "mybible-cli-java/1.5")
+                .GET();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (cachedEtag != null && Files.exists(fetch.cachedPath)) {
+            request.header("If-None-Match", cachedEtag);
+        }
+
+        fetch.exchange = HTTP_CLIENT.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        return fetch.exchange
+            .thenApplyAsync(response -> {
+                try (InputStream body = response.body()) {
+                    fetch.body = body;
+                    if (response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        fetch.notModified = true;
+                        return fetch;
+                    } else if (response.statusCode() == HttpURLConnection.HTTP_OK) {
+                        readRegistry(fetch, body, true);
+                        fetch.etag = response.headers().firstValue("ETag").orElse(null);
+                        return fetch;
+                    }
+                    throw new IOException(MessageFormat.format(bundle.getString("error.httpError"), response.statusCode(), fetch.url));
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, REGISTRY_EXECUTOR);
+    }
 
-        String cachedEtag = etagCache.get(urlString);
-        if (cachedEtag != null && Files.exists(cachedPath)) {
-            conn.setRequestProperty("If-None-Match", cachedEtag);
+    /**
+     * Parses a registry stream into fetch.modules and hashes it on the way. Downloaded
+     * registries are also copied to a temp file that replaces the cached copy on success.
+     */
+    private void readRegistry(RegistryFetch fetch, InputStream in, boolean saveCopy) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
         }
 
-        conn.connect();
-        int responseCode = conn.getResponseCode();
+        Path tempFile = saveCopy ? Files.createTempFile(registryCacheDir, fetch.fileName, ".tmp") : null;
+        List<CachedModule> modules = new ArrayList<>();
+        try (OutputStream copy = tempFile != null
+                 ? new BufferedOutputStream(Files.newOutputStream(tempFile)) : OutputStream.nullOutputStream();
+             InputStream source = new CopyingInputStream(new DigestInputStream(in, digest), copy)) {
+            if (fetch.zipped) {
+                RegistryParser.parseZipped(source, fetch.url, modules::add);
+            } else {
+                RegistryParser.parseExtra(source, fetch.url, modules::add);
+            }
+            // The rest of the zip still belongs to the hash and the cached copy
+            source.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException | RuntimeException e) {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
 
-        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
-            return Files.readAllBytes(cachedPath);
-        } else if (responseCode == HttpURLConnection.HTTP_OK) {
-            byte[] content = conn.getInputStream().readAllBytes();
-            Files.write(cachedPath, content);
-            String etag = conn.getHeaderField("ETag");
-            if (etag != null) {
-                etagCache.put(urlString, etag);
+        if (tempFile != null) {
+            try {
+                Files.move(tempFile, fetch.cachedPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, fetch.cachedPath, StandardCopyOption.REPLACE_EXISTING);
             }
-            return content;
-        } else {
-            throw new IOException(MessageFormat.format(bundle.getString("error.httpError"), responseCode, urlString));
         }
+        fetch.modules = modules;
+        fetch.hash = bytesToHex(digest.digest());
     }
 
-    private void processRegistry(byte[] content, String registryUrl, boolean isZipped) throws IOException {
-        List<CachedModule> modules = isZipped ? parseZippedRegistry(content, registryUrl) : parseExtraRegistry(content, registryUrl);
-        if (!modules.isEmpty()) {
-            insertModulesIntoCache(modules);
+    private String describeFetchError(Throwable e) {
+        Throwable cause = e;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException) {
+            return bundle.getString("error.sourceTimeout");
         }
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
     }
 
-    private List<CachedModule> parseZippedRegistry(byte[] zipContent, String registryUrl) throws IOException {
-        List<CachedModule> modules = new ArrayList<>();
-
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(zipContent);
-             ZipInputStream zis = new ZipInputStream(bais)) {
-
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (entry.getName().endsWith(".json")) {
-                    String jsonContent = new String(zis.readAllBytes(), StandardCharsets.UTF_8);
-                    JsonObject root = JsonParser.parseString(jsonContent).getAsJsonObject();
-
-                    Map<String, String> hosts = new HashMap<>();
-                    if (root.has("hosts")) {
-                        for (JsonElement hostElem : root.getAsJsonArray("hosts")) {
-                            JsonObject hostObj = hostElem.getAsJsonObject();
-                            hosts.put(hostObj.get("alias").getAsString(), hostObj.get("path").getAsString());
-                        }
-                    }
-
-                    if (root.has("downloads")) {
-                        for (JsonElement downloadElem : root.getAsJsonArray("downloads")) {
-                            JsonObject mod = downloadElem.getAsJsonObject();
-
-                            if (!mod.has("abr") || !mod.has("url")) continue;
-
-                            String name = mod.get("abr").getAsString();
-                            String fileName = mod.has("fil") ? mod.get("fil").getAsString() : name;
-
-                            if (!mod.has("des") || !mod.has("upd")) continue;
-
-                            for (JsonElement urlElem : mod.getAsJsonArray("url")) {
-                                String urlTemplate = urlElem.getAsString();
-                                int aliasStart = urlTemplate.indexOf("{") + 1;
-                                int aliasEnd = urlTemplate.indexOf("}");
-
-                                if (aliasStart == 0 || aliasEnd == -1) continue;
-
-                                String alias = urlTemplate.substring(aliasStart, aliasEnd);
-                                String filePart = urlTemplate.substring(aliasEnd + 1);
-
-                                if (hosts.containsKey(alias)) {
-                                    String downloadUrl = hosts.get(alias).replace("%s", filePart);
-                                    String moduleType = extractModuleType(downloadUrl);
-
-                                    modules.add(new CachedModule(
-                                        name,
-                                        mod.has("lng") ? mod.get("lng").getAsString() : null,
-                                        mod.get("des").getAsString(),
-                                        mod.get("upd").getAsString(),
-                                        downloadUrl,
-                                        fileName,
-                                        moduleType,
-                                        mod.has("siz") ? mod.get("siz").getAsString() : null,
-                                        registryUrl
-                                    ));
-                                }
-                            }
-                        }
-                    }
-                    break;
-                }
+    private Map<String, String> loadSourceHashes(Connection conn) throws SQLException {
+        Map<String, String> hashes = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT source_registry, content_hash FROM registry_sources")) {
+            while (rs.next()) {
+                hashes.put(rs.getString("source_registry"), rs.getString("content_hash"));
             }
         }
-        return modules;
+        return hashes;
     }
 
-    private List<CachedModule> parseExtraRegistry(byte[] jsonContent, String registryUrl) throws IOException {
-        List<CachedModule> modules = new ArrayList<>();
-        JsonObject root = JsonParser.parseString(new String(jsonContent, StandardCharsets.UTF_8)).getAsJsonObject();
-
-        if (root.has("modules")) {
-            for (JsonElement moduleElem : root.getAsJsonArray("modules")) {
-                JsonObject mod = moduleElem.getAsJsonObject();
+    private void saveSourceHash(Connection conn, String sourceRegistry, String hash) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR REPLACE INTO registry_sources (source_registry, content_hash, updated_at) VALUES (?, ?, ?)")) {
+            pstmt.setString(1, sourceRegistry);
+            pstmt.setString(2, hash);
+            pstmt.setString(3, Instant.now().toString());
+            pstmt.executeUpdate();
+        }
+    }
 
-                if (!mod.has("download_url") || !mod.has("file_name") || !mod.has("description") || !mod.has("update_date")) {
-                    continue;
+    /**
+     * Brings the rows of one registry in line with its freshly parsed module list:
+     * new entries are inserted, changed metadata is updated and vanished entries deleted.
+     */
+    private void syncSourceModules(Connection conn, String sourceRegistry, List<CachedModule> modules) throws SQLException {
+        Map<String, CachedModule> existing = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT name, language, description, update_date, download_url, file_name, module_type, size " +
+                "FROM cached_modules WHERE source_registry = ?")) {
+            pstmt.setString(1, sourceRegistry);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    CachedModule mod = new CachedModule(
+                        rs.getString("name"), rs.getString("language"), rs.getString("description"),
+                        rs.getString("update_date"), rs.getString("download_url"), rs.getString("file_name"),
+                        rs.getString("module_type"), rs.getString("size"), sourceRegistry);
+                    existing.put(cacheKey(mod), mod);
                 }
-
-                String fileName = mod.get("file_name").getAsString();
-                String moduleName = fileName.endsWith(".zip") ? fileName.substring(0, fileName.length() - 4) : fileName;
-                String downloadUrl = mod.get("download_url").getAsString();
-                String moduleType = extractModuleType(downloadUrl);
-
-                modules.add(new CachedModule(
-                    moduleName,
-                    mod.has("language_code") ? mod.get("language_code").getAsString() : null,
-                    mod.get("description").getAsString(),
-                    mod.get("update_date").getAsString(),
-                    downloadUrl,
-                    fileName + ".zip",
-                    moduleType,
-                    null,
-                    registryUrl
-                ));
             }
         }
-        return modules;
-    }
 
-    private String extractModuleType(String downloadUrl) {
-        try {
-            String urlFileName = downloadUrl.substring(downloadUrl.lastIndexOf('/') + 1);
-            String decoded = URLDecoder.decode(urlFileName, StandardCharsets.UTF_8);
-            String withoutZip = decoded.endsWith(".zip") ? decoded.substring(0, decoded.length() - 4) : decoded;
-            String[] parts = withoutZip.split("\\.");
-            if (parts.length > 1) {
-                return parts[parts.length - 1];
+        String insertSql = "INSERT OR IGNORE INTO cached_modules " +
+            "(name, language, description, update_date, download_url, file_name, module_type, size, source_registry) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String updateSql = "UPDATE cached_modules SET language = ?, description = ?, file_name = ?, module_type = ?, size = ? " +
+            "WHERE name = ? AND update_date = ? AND download_url = ? AND source_registry = ?";
+        String deleteSql = "DELETE FROM cached_modules " +
+            "WHERE name = ? AND update_date = ? AND download_url = ? AND source_registry = ?";
+
+        try (PreparedStatement insert = conn.prepareStatement(insertSql);
+             PreparedStatement update = conn.prepareStatement(updateSql);
+             PreparedStatement delete = conn.prepareStatement(deleteSql)) {
+
+            for (CachedModule mod : modules) {
+                CachedModule old = existing.remove(cacheKey(mod));
+                if (old == null) {
+                    insert.setString(1, mod.name);
+                    insert.setString(2, mod.language);
+                    insert.setString(3, mod.description);
+                    insert.setString(4, mod.updateDate);
+                    insert.setString(5, mod.downloadUrl);
+                    insert.setString(6, mod.fileName);
+                    insert.setString(7, mod.moduleType);
+                    insert.setString(8, mod.size);
+                    insert.setString(9, sourceRegistry);
+                    insert.addBatch();
+                } else if (!Objects.equals(old.language, mod.language) || !Objects.equals(old.description, mod.description)
+                        || !Objects.equals(old.fileName, mod.fileName) || !Objects.equals(old.moduleType, mod.moduleType)
+                        || !Objects.equals(old.size, mod.size)) {
+                    update.setString(1, mod.language);
+                    update.setString(2, mod.description);
+                    update.setString(3, mod.fileName);
+                    update.setString(4, mod.moduleType);
+                    update.setString(5, mod.size);
+                    update.setString(6, mod.name);
+                    update.setString(7, mod.updateDate);
+                    update.setString(8, mod.downloadUrl);
+                    update.setString(9, sourceRegistry);
+                    update.addBatch();
+                }
             }
-        } catch (Exception e) {
+            for (CachedModule old : existing.values()) {
+                delete.setString(1, old.name);
+                delete.setString(2, old.updateDate);
+                delete.setString(3, old.downloadUrl);
+                delete.setString(4, sourceRegistry);
+                delete.addBatch();
+            }
+
+            insert.executeBatch();
+            update.executeBatch();
+            delete.executeBatch();
         }
-        return "bible";
     }
 
-    private void insertModulesIntoCache(List<CachedModule> modules) throws IOException {
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + cacheDbPath)) {
-            String sql = "INSERT OR IGNORE INTO cached_modules " +
-                "(name, language, description, update_date, download_url, file_name, module_type, size, source_registry) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                conn.setAutoCommit(false);
-
-                for (CachedModule mod : modules) {
-                    pstmt.setString(1, mod.name);
-                    pstmt.setString(2, mod.language);
-                    pstmt.setString(3, mod.description);
-                    pstmt.setString(4, mod.updateDate);
-                    pstmt.setString(5, mod.downloadUrl);
-                    pstmt.setString(6, mod.fileName);
-                    pstmt.setString(7, mod.moduleType);
-                    pstmt.setString(8, mod.size);
-                    pstmt.setString(9, mod.sourceRegistry);
-                    pstmt.addBatch();
+    // Drops rows of registries that are no longer listed in the sources folder
+    private void removeStaleSources(Connection conn, Set<String> sourceUrls) throws SQLException {
+        Set<String> stale = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT source_registry FROM cached_modules " +
+                 "UNION SELECT source_registry FROM registry_sources")) {
+            while (rs.next()) {
+                String source = rs.getString(1);
+                if (!sourceUrls.contains(source)) {
+                    stale.add(source);
                 }
-
-                pstmt.executeBatch();
-                conn.commit();
             }
-        } catch (SQLException e) {
-            throw new IOException(MessageFormat.format(bundle.getString("error.cacheInsert"), e.getMessage()), e);
         }
+        if (stale.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement deleteModules = conn.prepareStatement("DELETE FROM cached_modules WHERE source_registry = ?");
+             PreparedStatement deleteSource = conn.prepareStatement("DELETE FROM registry_sources WHERE source_registry = ?")) {
+            for (String source : stale) {
+                deleteModules.setString(1, source);
+                deleteModules.addBatch();
+                deleteSource.setString(1, source);
+                deleteSource.addBatch();
+            }
+            deleteModules.executeBatch();
+            deleteSource.executeBatch();
+        }
+    }
+
+    private static String cacheKey(CachedModule mod) {
+        return mod.name + '\u0000' + mod.updateDate + '\u0000' + mod.downloadUrl;
     }
 
     public List<CachedModule> listAvailableModules(String language, String moduleType, String nameFilter, String descFilter) throws IOException {
@@ -411,24 +728,44 @@ public class ModuleManager {
 
         List<String> params = new ArrayList<>();
 
+        // Language codes and types match anywhere, like in the installed and upgradable lists
         if (language != null && !language.isEmpty()) {
-            sql.append(" AND LOWER(language) LIKE LOWER(?)");
-            params.add("%" + language + "%");
+            sql.append(" AND instr(language_lc, lower(?)) > 0");
+            params.add(language);
         }
         if (moduleType != null && !moduleType.isEmpty()) {
-            sql.append(" AND LOWER(module_type) LIKE LOWER(?)");
-            params.add("%" + moduleType + "%");
-        }
-        if (nameFilter != null && !nameFilter.isEmpty()) {
-            sql.append(" AND LOWER(name) LIKE LOWER(?)");
-            params.add("%" + nameFilter + "%");
-        }
-        if (descFilter != null && !descFilter.isEmpty()) {
-            sql.append(" AND LOWER(description) LIKE LOWER(?)");
-            params.add("%" + descFilter + "%");
+            sql.append(" AND instr(type_lc, lower(?)) > 0");
+            params.add(moduleType);
+        }
+
+        boolean hasName = nameFilter != null && !nameFilter.isEmpty();
+        boolean hasDesc = descFilter != null && !descFilter.isEmpty();
+        // Trigrams only answer patterns of three or more characters
+        boolean useSearchIndex = searchIndexAvailable && (hasName || hasDesc)
+            && (!hasName || nameFilter.length() >= 3) && (!hasDesc || descFilter.length() >= 3);
+        if (useSearchIndex) {
+            sql.append(" AND rowid IN (SELECT rowid FROM cached_modules_fts WHERE 1=1");
+            if (hasName) {
+                sql.append(" AND name LIKE ?");
+                params.add("%" + nameFilter + "%");
+            }
+            if (hasDesc) {
+                sql.append(" AND description LIKE ?");
+                params.add("%" + descFilter + "%");
+            }
+            sql.append(")");
+        } else {
+            if (hasName) {
+                sql.append(" AND LOWER(name) LIKE LOWER(?)");
+                params.add("%" + nameFilter + "%");
+            }
+            if (hasDesc) {
+                sql.append(" AND LOWER(description) LIKE LOWER(?)");
+                params.add("%" + descFilter + "%");
+            }
         }
 
-        sql.append(" GROUP BY LOWER(name) ORDER BY LOWER(name)");
+        sql.append(" GROUP BY name_lc ORDER BY name_lc");
 
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + cacheDbPath);
              PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
@@ -459,6 +796,27 @@ public class ModuleManager {
         return modules;
     }
 
+    // Distinct languages of the cached modules, read from the language index
+    public List<String> listAvailableLanguages() throws IOException {
+        List<String> languages = new ArrayList<>();
+        String sql = "SELECT MIN(language) AS language FROM cached_modules WHERE language_lc <> '' GROUP BY language_lc ORDER BY language_lc";
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + cacheDbPath);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                languages.add(rs.getString("language"));
+            }
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format(bundle.getString("error.listAvailable"), e.getMessage()), e);
+        }
+        return languages;
+    }
+
+    // Files of every installed module in one grouped pass, joined to installed_modules as f
+    private static final String INSTALLED_FILES_JOIN =
+        " LEFT JOIN (SELECT module_name, group_concat(file_name, char(10)) AS files " +
+        "FROM %sinstalled_files GROUP BY module_name) f ON f.module_name = m.name";
+
     public List<InstalledModule> listInstalledModules(String language, String moduleType, 
                                                         String nameFilter, String descFilter) throws IOException {
         List<InstalledModule> modules = new ArrayList<>();
@@ -471,66 +829,76 @@ public class ModuleManager {
         initializeInstalledDatabase();
 
         StringBuilder sql = new StringBuilder(
-            "SELECT name, language, description, type, updatedate, installdate " +
-            "FROM installed_modules WHERE 1=1");
-
+            "SELECT m.name, m.language, m.description, m.type, m.updatedate, m.installdate, f.files " +
+            "FROM installed_modules m" + String.format(INSTALLED_FILES_JOIN, "") + " WHERE 1=1");
         List<String> params = new ArrayList<>();
+        appendInstalledFilters(sql, params, language, moduleType, nameFilter, descFilter);
+        sql.append(" ORDER BY LOWER(m.name)");
+
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + installedDbPath);
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setString(i + 1, params.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    modules.add(readInstalledModule(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format(
+                bundle.getString("error.listInstalled"), e.getMessage()), e);
+        }
+
+        return modules;
+    }
 
+    private static void appendInstalledFilters(StringBuilder sql, List<String> params, String language, String moduleType,
+                                               String nameFilter, String descFilter) {
         if (language != null && !language.isEmpty()) {
-            sql.append(" AND LOWER(language) LIKE LOWER(?)");
+            sql.append(" AND LOWER(m.language) LIKE LOWER(?)");
             params.add("%" + language + "%");
         }
 
         if (moduleType != null && !moduleType.isEmpty()) {
-            sql.append(" AND LOWER(type) LIKE LOWER(?)");
+            sql.append(" AND LOWER(m.type) LIKE LOWER(?)");
             params.add("%" + moduleType + "%");
         }
 
         if (nameFilter != null && !nameFilter.isEmpty()) {
-            sql.append(" AND LOWER(name) LIKE LOWER(?)");
+            sql.append(" AND LOWER(m.name) LIKE LOWER(?)");
             params.add("%" + nameFilter + "%");
         }
 
         if (descFilter != null && !descFilter.isEmpty()) {
-            sql.append(" AND LOWER(description) LIKE LOWER(?)");
+            sql.append(" AND LOWER(m.description) LIKE LOWER(?)");
             params.add("%" + descFilter + "%");
         }
+    }
 
-        sql.append(" ORDER BY LOWER(name)");
-
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + installedDbPath);
-             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
-
-            for (int i = 0; i < params.size(); i++) {
-                pstmt.setString(i + 1, params.get(i));
-            }
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    InstalledModule mod = new InstalledModule(
-                        rs.getString("name"),
-                        rs.getString("language"),
-                        rs.getString("description"),
-                        rs.getString("updatedate"),
-                        rs.getString("installdate")
-                    );
-
-                    // Read type directly from database
-                    mod.moduleType = rs.getString("type");
-                    if (mod.moduleType == null || mod.moduleType.isEmpty()) {
-                        mod.moduleType = "bible";  // Fallback for old records
-                    }
+    // Reads a row of installed_modules m joined with INSTALLED_FILES_JOIN
+    private static InstalledModule readInstalledModule(ResultSet rs) throws SQLException {
+        InstalledModule mod = new InstalledModule(
+            rs.getString("name"),
+            rs.getString("language"),
+            rs.getString("description"),
+            rs.getString("updatedate"),
+            rs.getString("installdate")
+        );
 
-                    mod.files = getInstalledFiles(conn, mod.name);
-                    modules.add(mod);
-                }
-            }
-        } catch (SQLException e) {
-            throw new IOException(MessageFormat.format(
-                bundle.getString("error.listInstalled"), e.getMessage()), e);
+        // Read type directly from database
+        mod.moduleType = rs.getString("type");
+        if (mod.moduleType == null || mod.moduleType.isEmpty()) {
+            mod.moduleType = "bible";  // Fallback for old records
         }
 
-        return modules;
+        String files = rs.getString("files");
+        if (files != null) {
+            mod.files.addAll(Arrays.asList(files.split("\n")));
+        }
+        return mod;
     }
 
     private List<String> getInstalledFiles(Connection conn, String moduleName) throws SQLException {
@@ -547,23 +915,68 @@ public class ModuleManager {
         return files;
     }
 
+    /**
+     * Installed modules with a newer version in the cache, found in one query: the installed
+     * database is attached to the cache database and joined on the lowercase name against
+     * the latest cached update date.
+     */
     public List<UpgradableModule> listUpgradableModules(String language, String moduleType, String nameFilter, String descFilter) throws IOException {
         List<UpgradableModule> upgradable = new ArrayList<>();
-        List<InstalledModule> installed = listInstalledModules(language, moduleType, nameFilter, descFilter);
+        Path installedDbPath = modulePath.resolve("mybible_installed.db");
 
-        for (InstalledModule inst : installed) {
-            CachedModule latest = getCachedModule(inst.name, null);
+        if (!Files.exists(installedDbPath)) {
+            return upgradable;
+        }
 
-            if (latest == null || latest.updateDate.compareTo(inst.updateDate) <= 0) {
-                continue;
-            }
+        initializeInstalledDatabase();
 
-            if (moduleType != null && !moduleType.isEmpty() && 
-                !latest.moduleType.toLowerCase().contains(moduleType.toLowerCase())) {
-                continue;
-            }
+        StringBuilder sql = new StringBuilder(
+            "SELECT m.name, m.language, m.description, m.type, m.updatedate, m.installdate, f.files, " +
+            "c.name AS c_name, c.language AS c_language, c.description AS c_description, c.update_date AS c_update_date, " +
+            "c.download_url AS c_download_url, c.file_name AS c_file_name, c.module_type AS c_module_type, " +
+            "c.size AS c_size, c.source_registry AS c_source_registry " +
+            "FROM installed.installed_modules m" + String.format(INSTALLED_FILES_JOIN, "installed.") +
+            " JOIN cached_modules c ON c.name_lc = lower(m.name) " +
+            "AND c.update_date = (SELECT MAX(update_date) FROM cached_modules WHERE name_lc = lower(m.name)) " +
+            "WHERE c.update_date > m.updatedate");
+        List<String> params = new ArrayList<>();
+        appendInstalledFilters(sql, params, language, moduleType, nameFilter, descFilter);
+        if (moduleType != null && !moduleType.isEmpty()) {
+            sql.append(" AND c.type_lc LIKE LOWER(?)");
+            params.add("%" + moduleType + "%");
+        }
+        // Mirrors of the latest version are separate rows; one is enough
+        sql.append(" GROUP BY m.name ORDER BY LOWER(m.name)");
 
-            upgradable.add(new UpgradableModule(inst, latest));
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + cacheDbPath)) {
+            try (PreparedStatement attach = conn.prepareStatement("ATTACH DATABASE ? AS installed")) {
+                attach.setString(1, installedDbPath.toAbsolutePath().toString());
+                attach.execute();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                for (int i = 0; i < params.size(); i++) {
+                    pstmt.setString(i + 1, params.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        CachedModule latest = new CachedModule(
+                            rs.getString("c_name"),
+                            rs.getString("c_language"),
+                            rs.getString("c_description"),
+                            rs.getString("c_update_date"),
+                            rs.getString("c_download_url"),
+                            rs.getString("c_file_name"),
+                            rs.getString("c_module_type"),
+                            rs.getString("c_size"),
+                            rs.getString("c_source_registry")
+                        );
+                        upgradable.add(new UpgradableModule(readInstalledModule(rs), latest));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format(
+                bundle.getString("error.listInstalled"), e.getMessage()), e);
         }
 
         return upgradable;
@@ -618,7 +1031,7 @@ public class ModuleManager {
     private CachedModule getCachedModule(String name, String version) throws IOException {
         StringBuilder sql = new StringBuilder(
             "SELECT name, language, description, update_date, download_url, file_name, module_type, size, source_registry " +
-            "FROM cached_modules WHERE LOWER(name) LIKE LOWER(?)");
+            "FROM cached_modules WHERE name_lc LIKE lower(?)");
 
         if (version != null && !version.isEmpty()) {
             sql.append(" AND update_date = ?");
@@ -654,6 +1067,27 @@ public class ModuleManager {
         return null;
     }
 
+    // Every download URL the registries list for this module version, the chosen one first
+    private List<String> getMirrorUrls(CachedModule mod) throws IOException {
+        List<String> urls = new ArrayList<>();
+        urls.add(mod.downloadUrl);
+        String sql = "SELECT download_url FROM cached_modules WHERE name = ? AND update_date = ?";
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + cacheDbPath);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, mod.name);
+            pstmt.setString(2, mod.updateDate);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String url = rs.getString("download_url");
+                    if (!urls.contains(url)) urls.add(url);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format(bundle.getString("error.getCached"), e.getMessage()), e);
+        }
+        return urls;
+    }
+
     private InstalledModule getInstalledModule(String name) throws IOException {
         Path installedDbPath = modulePath.resolve("mybible_installed.db");
 
@@ -699,112 +1133,469 @@ public class ModuleManager {
     }
 
     public boolean installModule(String name, String version, boolean reinstall, ProgressCallback progressCallback) throws IOException {
-        CachedModule mod = getCachedModule(name, version);
-        if (mod == null) {
-            throw new IOException(MessageFormat.format(bundle.getString("error.moduleNotFound"), name));
+        InstallResult result = installModules(Collections.singletonList(name), version, reinstall, progressCallback);
+        if (!result.failed.isEmpty()) {
+            throw result.failed.values().iterator().next();
         }
+        return !result.installed.isEmpty();
+    }
 
-        InstalledModule existing = getInstalledModule(name);
-        if (existing != null) {
-            if (reinstall) {
-                if (verbosity > 0) {
-                    System.out.println(MessageFormat.format(bundle.getString("msg.reinstalling"), name));
+    /**
+     * Installs several modules at once. Modules that are already installed are skipped
+     * unless reinstall is set, in which case they are replaced.
+     */
+    public InstallResult installModules(List<String> names, String version, boolean reinstall, ProgressCallback progressCallback) throws IOException {
+        return runInstallBatch(names, version, reinstall, "msg.reinstalling", progressCallback);
+    }
+
+    /**
+     * In streaming mode module zips are extracted while they download instead of being
+     * read back from disk afterwards.
+     */
+    public void setStreamingInstall(boolean streamingInstall) {
+        this.streamingInstall = streamingInstall;
+    }
+
+    public void setDownloadParallelism(int parallelism) {
+        if (parallelism > 0) {
+            this.downloadParallelism = parallelism;
+        }
+    }
+
+    /**
+     * Download/install scheduler. Up to downloadParallelism zips are downloaded at once,
+     * at most downloadsPerHost from the same host. Each finished download is handed to a
+     * single install thread that extracts it and records it, so extraction overlaps the
+     * remaining downloads and the installed-modules database has one writer.
+     */
+    private InstallResult runInstallBatch(List<String> names, String version, boolean replace,
+                                          String replaceMessageKey, ProgressCallback progressCallback) throws IOException {
+        InstallResult result = new InstallResult();
+        List<InstallJob> jobs = new ArrayList<>();
+        for (String name : new LinkedHashSet<>(names)) {
+            try {
+                CachedModule mod = getCachedModule(name, version);
+                if (mod == null) {
+                    throw new IOException(MessageFormat.format(bundle.getString("error.moduleNotFound"), name));
                 }
-                removeModule(name);
-            } else {
-                if (verbosity > 0) {
-                    System.out.println(MessageFormat.format(bundle.getString("msg.alreadyInstalled"), name));
+                InstalledModule existing = getInstalledModule(name);
+                if (existing != null && !replace) {
+                    if (verbosity > 0) {
+                        System.out.println(MessageFormat.format(bundle.getString("msg.alreadyInstalled"), name));
+                    }
+                    result.skipped.add(name);
+                    continue;
                 }
-                return false;
+                if (existing != null && verbosity > 0) {
+                    System.out.println(MessageFormat.format(bundle.getString(replaceMessageKey), name));
+                }
+                List<String> urls = getMirrorUrls(mod);
+                jobs.add(new InstallJob(name, mod, urls, existing, downloadCache.lookup(mod.name, mod.updateDate, urls)));
+            } catch (IOException e) {
+                result.failed.put(name, e);
             }
         }
-
-        String urlFileName = mod.downloadUrl.substring(mod.downloadUrl.lastIndexOf('/') + 1);
-        String decodedFileName = URLDecoder.decode(urlFileName, StandardCharsets.UTF_8);
-        if (!decodedFileName.endsWith(".zip")) {
-            decodedFileName += ".zip";
+        if (jobs.isEmpty()) {
+            return result;
         }
-        Path zipPath = downloadCacheDir.resolve(decodedFileName);
 
-        if (!Files.exists(zipPath)) {
-            downloadFile(mod.downloadUrl, zipPath, progressCallback);
+        try {
+            initializeInstalledDatabase();
+        } catch (IOException e) {
+            throw new IOException(MessageFormat.format(bundle.getString("error.installedDbInit"), e.getMessage()), e);
         }
 
-        Map<String, Path> extractedFiles = extractModule(zipPath, mod.name, progressCallback);
+        ProgressCallback progress = synchronizedProgress(progressCallback);
+        ModuleDownloader downloader = new ModuleDownloader(HTTP_CLIENT, bundle, downloadsPerHost);
+        AtomicInteger finished = new AtomicInteger();
+        int total = jobs.size();
 
+        ExecutorService downloads = Executors.newFixedThreadPool(Math.min(downloadParallelism, total), daemonThreads("module-download"));
+        ExecutorService installs = Executors.newSingleThreadExecutor(daemonThreads("module-install"));
+        if (progress != null) {
+            progress.update(0, total, bundle.getString("msg.downloading"));
+        }
         try {
-            initializeInstalledDatabase();
+            List<CompletableFuture<Void>> pipeline = new ArrayList<>();
+            for (InstallJob job : interleaveByHost(jobs)) {
+                pipeline.add(CompletableFuture
+                    .runAsync(() -> downloadForInstall(job, downloader, progress), downloads)
+                    .thenRunAsync(() -> extractAndRecord(job, progress), installs)
+                    .handle((ignored, error) -> {
+                        synchronized (result) {
+                            if (error == null) {
+                                result.installed.add(job.name);
+                            } else {
+                                result.failed.put(job.name, unwrapIOException(error));
+                            }
+                        }
+                        if (progress != null) {
+                            progress.update(finished.incrementAndGet(), total,
+                                MessageFormat.format(bundle.getString(error == null ? "msg.batchInstalled" : "msg.batchFailed"), job.name));
+                        }
+                        return null;
+                    }));
+            }
+            CompletableFuture.allOf(pipeline.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            downloads.shutdownNow();
+            installs.shutdownNow();
+            try {
+                downloadCache.evict();
+            } catch (IOException e) {
+                System.err.println(MessageFormat.format(bundle.getString("error.downloadCache"), e.getMessage()));
+            }
+        }
+        return result;
+    }
+
+    private void downloadForInstall(InstallJob job, ModuleDownloader downloader, ProgressCallback progress) {
+        if (job.zipPath != null) {
+            return;
+        }
+        ProgressCallback moduleProgress = progress == null ? null
+            : (current, total, message) -> progress.moduleUpdate(job.name, current, total, message);
+        try {
+            Path staging = downloadCache.stagingPath(job.mod.name, job.mod.updateDate);
+            if (streamingInstall) {
+                try {
+                    String hash = downloader.downloadStreaming(job.urls, job.mod.size, staging, moduleProgress,
+                        in -> job.staged = streamModule(in, job.mod.name));
+                    if (hash != null) {
+                        job.zipPath = downloadCache.store(job.mod.name, job.mod.updateDate, job.urls, staging, hash);
+                        return;
+                    }
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    // Whatever arrived is resumed below, if the next attempt uses the same mirror
+                    discardStaged(job);
+                }
+            }
+            downloader.download(job.urls, job.mod.size, staging, moduleProgress);
+            job.zipPath = downloadCache.store(job.mod.name, job.mod.updateDate, job.urls, staging, null);
         } catch (IOException e) {
-            throw new IOException(MessageFormat.format(bundle.getString("error.installedDbInit"), e.getMessage()), e);
+            discardStaged(job);
+            throw new CompletionException(e);
         }
-        recordInstallation(mod, extractedFiles);
+    }
 
-        if (verbosity > 0) {
-            System.out.println(MessageFormat.format(bundle.getString("msg.installSuccess"), mod.name, mod.updateDate, extractedFiles.size()));
+    private void discardStaged(InstallJob job) {
+        if (job.staged != null) {
+            try {
+                deleteDirectory(job.staged.stagingDir);
+            } catch (IOException e) {
+                // Removed with the other stale staging directories
+            }
+            job.staged = null;
+        }
+    }
+
+    private void extractAndRecord(InstallJob job, ProgressCallback progress) {
+        try {
+            StagedModule staged = job.staged != null
+                ? job.staged
+                : extractModule(job.zipPath, job.mod.name, progress);
+            Map<String, Path> extractedFiles = commitStaged(staged, job.mod, job.existing);
+            if (verbosity > 0) {
+                System.out.println(MessageFormat.format(bundle.getString("msg.installSuccess"), job.mod.name, job.mod.updateDate, extractedFiles.size()));
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
         }
-        return true;
     }
 
-    private void downloadFile(String urlString, Path destination, ProgressCallback progressCallback) throws IOException {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestProperty("User-Agent", "mybible-cli-java/1.5");
+    // Orders jobs round-robin over hosts so the per-host limit rarely idles a download thread
+    private List<InstallJob> interleaveByHost(List<InstallJob> jobs) {
+        Map<String, Deque<InstallJob>> byHost = new LinkedHashMap<>();
+        for (InstallJob job : jobs) {
+            byHost.computeIfAbsent(ModuleDownloader.hostOf(job.mod.downloadUrl), host -> new ArrayDeque<>()).add(job);
+        }
+        List<InstallJob> ordered = new ArrayList<>(jobs.size());
+        while (ordered.size() < jobs.size()) {
+            for (Deque<InstallJob> queue : byHost.values()) {
+                InstallJob job = queue.poll();
+                if (job != null) ordered.add(job);
+            }
+        }
+        return ordered;
+    }
 
-        int contentLength = conn.getContentLength();
+    private static IOException unwrapIOException(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+    }
 
-        try (InputStream in = conn.getInputStream();
-             OutputStream out = Files.newOutputStream(destination)) {
+    // Callbacks come from several threads; callers get them one at a time
+    private static ProgressCallback synchronizedProgress(ProgressCallback callback) {
+        if (callback == null) {
+            return null;
+        }
+        return new ProgressCallback() {
+            @Override
+            public synchronized void update(int current, int total, String message) {
+                callback.update(current, total, message);
+            }
 
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            int totalRead = 0;
+            @Override
+            public synchronized void moduleUpdate(String moduleName, int current, int total, String message) {
+                callback.moduleUpdate(moduleName, current, total, message);
+            }
+        };
+    }
 
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-                totalRead += bytesRead;
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 
-                if (progressCallback != null && contentLength > 0) {
-                    progressCallback.update(totalRead, contentLength, bundle.getString("msg.downloading"));
+    /**
+     * Extracts a module zip next to the live modules in a staging directory and checks that
+     * every .SQLite3 file has a SQLite header. commitStaged() then moves the files into
+     * place one atomic rename each, so a reader never sees a half-written database.
+     */
+    private StagedModule extractModule(Path zipPath, String moduleName, ProgressCallback progressCallback) throws IOException {
+        return stageModule(moduleName, stager -> {
+            try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+                Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+                while (entries.hasMoreElements()) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    try (InputStream is = zipFile.getInputStream(entry)) {
+                        stager.stage(entry.getName(), is);
+                    }
                 }
             }
+        });
+    }
+
+    /**
+     * Stages a module zip while it downloads, reading the local entry headers with
+     * ZipArchiveInputStream. Returns null if an entry cannot be read that way (e.g. a
+     * stored entry whose size is only in the central directory); the zip is then still
+     * downloaded completely and extracted from the file.
+     */
+    private StagedModule streamModule(InputStream in, String moduleName) throws IOException {
+        try {
+            return stageModule(moduleName, stager -> {
+                ZipArchiveInputStream zin = new ZipArchiveInputStream(in, StandardCharsets.UTF_8.name(), true, true);
+                ZipArchiveEntry entry;
+                while ((entry = zin.getNextEntry()) != null) {
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    if (!zin.canReadEntryData(entry)) {
+                        throw new UnsupportedZipFeatureException(UnsupportedZipFeatureException.Feature.UNKNOWN_COMPRESSED_SIZE, entry);
+                    }
+                    stager.stage(entry.getName(), zin);
+                }
+            });
+        } catch (UnsupportedZipFeatureException e) {
+            return null;
         }
     }
 
-    private Map<String, Path> extractModule(Path zipPath, String moduleName, ProgressCallback progressCallback) throws IOException {
-        Map<String, Path> extractedFiles = new LinkedHashMap<>();
+    private interface EntrySource {
+        void forEach(EntryStager stager) throws IOException;
+    }
+
+    private interface EntryStager {
+        void stage(String entryName, InputStream in) throws IOException;
+    }
+
+    private static class StagedModule {
+        final String moduleName;
+        final Path stagingDir;
+        final Map<String, Path> files = new LinkedHashMap<>();
+
+        StagedModule(String moduleName, Path stagingDir) {
+            this.moduleName = moduleName;
+            this.stagingDir = stagingDir;
+        }
+    }
+
+    // Writes the entries of a module into a new staging directory under their final names
+    private StagedModule stageModule(String moduleName, EntrySource source) throws IOException {
         String cleanModuleName = moduleName.endsWith(".zip") 
             ? moduleName.substring(0, moduleName.length() - 4) 
             : moduleName;
 
-        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
-            Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
-            
-            while (entries.hasMoreElements()) {
-                ZipArchiveEntry entry = entries.nextElement();
-                
-                if (entry.isDirectory()) {
-                    continue;
-                }
+        Path stagingRoot = modulePath.resolve(STAGING_DIR);
+        removeStaleStaging(stagingRoot);
+        Files.createDirectories(stagingRoot);
+        StagedModule staged = new StagedModule(cleanModuleName,
+            Files.createTempDirectory(stagingRoot, cleanModuleName.replaceAll("[^\\p{L}\\p{N}._-]", "_") + "-"));
+        byte[] buffer = new byte[EXTRACT_BUFFER_SIZE];
 
-                String originalFileName = entry.getName();
+        try {
+            source.forEach((originalFileName, in) -> {
                 String targetName = reconstructSqliteName(originalFileName, cleanModuleName);
-                
+
                 if (targetName.equals(originalFileName) && originalFileName.startsWith(".")) {
                     targetName = cleanModuleName + originalFileName;
                 }
 
-                Path targetPath = modulePath.resolve(targetName);
+                Path stagedPath = staged.stagingDir.resolve(Integer.toString(staged.files.size()));
+                writeStream(in, stagedPath, buffer);
+                if (targetName.toLowerCase(Locale.ROOT).endsWith(".sqlite3") && !isSqliteFile(stagedPath)) {
+                    throw new IOException(MessageFormat.format(bundle.getString("error.file.notValidSqlite"), targetName));
+                }
+                staged.files.put(targetName, stagedPath);
+            });
+        } catch (IOException | RuntimeException e) {
+            deleteDirectory(staged.stagingDir);
+            throw e;
+        }
+        return staged;
+    }
 
-                try (InputStream is = zipFile.getInputStream(entry)) {
-                    Files.copy(is, targetPath, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Moves staged files over the live ones and records the installation. The files they
+     * replace are kept in the staging directory until the record is committed; if moving
+     * or recording fails, they are moved back and the new files that had no predecessor
+     * are deleted, so the disk keeps matching installed_modules. The module's cached data
+     * is dropped either way.
+     */
+    private Map<String, Path> commitStaged(StagedModule staged, CachedModule mod, InstalledModule replaced) throws IOException {
+        Map<String, Path> extractedFiles = new LinkedHashMap<>();
+        // Live path to the copy of the file it replaced, or to null if there was none
+        Map<Path, Path> previousFiles = new LinkedHashMap<>();
+        try {
+            try {
+                for (Map.Entry<String, Path> file : staged.files.entrySet()) {
+                    Path targetPath = modulePath.resolve(file.getKey());
+                    // A zip listing the same name twice keeps the file from before the install
+                    if (!previousFiles.containsKey(targetPath)) {
+                        Path previous = null;
+                        if (Files.exists(targetPath)) {
+                            previous = staged.stagingDir.resolve("previous-" + previousFiles.size());
+                            keepPrevious(targetPath, previous);
+                        }
+                        previousFiles.put(targetPath, previous);
+                    }
+                    moveReplacing(file.getValue(), targetPath);
+                    extractedFiles.put(file.getKey(), targetPath);
                 }
-                
-                extractedFiles.put(targetName, targetPath);
+                recordInstallation(mod, extractedFiles, replaced);
+            } catch (IOException | RuntimeException e) {
+                restorePrevious(previousFiles);
+                throw e;
+            } finally {
+                invalidateModuleData(staged.moduleName, staged.files.keySet());
             }
+        } finally {
+            deleteDirectory(staged.stagingDir);
         }
         return extractedFiles;
     }
 
+    // A hard link keeps the old file without taking it away from readers; copied where links are unsupported
+    private static void keepPrevious(Path livePath, Path previous) throws IOException {
+        try {
+            Files.createLink(previous, livePath);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(livePath, previous, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private void restorePrevious(Map<Path, Path> previousFiles) {
+        List<Map.Entry<Path, Path>> entries = new ArrayList<>(previousFiles.entrySet());
+        Collections.reverse(entries);
+        for (Map.Entry<Path, Path> entry : entries) {
+            Path livePath = entry.getKey();
+            try {
+                if (entry.getValue() != null) {
+                    moveReplacing(entry.getValue(), livePath);
+                } else {
+                    Files.deleteIfExists(livePath);
+                }
+            } catch (IOException e) {
+                System.err.println(MessageFormat.format(bundle.getString("error.restoreFile"), livePath, e.getMessage()));
+            }
+        }
+    }
+
+    private static void moveReplacing(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Copies with a large buffer straight into a file channel; inflation fills it in big steps
+    private static void writeStream(InputStream in, Path target, byte[] buffer) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            int filled;
+            while ((filled = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, filled);
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+            }
+        }
+    }
+
+    // Staging directories left by an interrupted install
+    private void removeStaleStaging(Path stagingRoot) {
+        if (!Files.isDirectory(stagingRoot)) return;
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(stagingRoot)) {
+            for (Path dir : dirs) {
+                if (Files.getLastModifiedTime(dir).toMillis() < cutoff) deleteDirectory(dir);
+            }
+        } catch (IOException e) {
+            // Retried at the next install
+        }
+    }
+
+    /**
+     * Drops the cached verse index and abbreviations of a module, so they are rebuilt from
+     * the files now on disk. Caches are keyed by the module name shown to the user, which
+     * is the file name or the name in the module's info table.
+     */
+    private void invalidateModuleData(String moduleName, Collection<String> fileNames) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(moduleName);
+        for (String fileName : fileNames) {
+            if (!fileName.toLowerCase(Locale.ROOT).endsWith(".sqlite3")) continue;
+            names.add(fileName.substring(0, fileName.length() - ".sqlite3".length()));
+            String infoName = readInfoName(modulePath.resolve(fileName));
+            if (infoName != null) names.add(infoName);
+        }
+        Path moduleDataDir = configDir.resolve("moduledata");
+        for (String name : names) {
+            for (String suffix : MODULE_DATA_SUFFIXES) {
+                try {
+                    Files.deleteIfExists(moduleDataDir.resolve(name + suffix));
+                } catch (IOException e) {
+                    if (verbosity > 0) {
+                        System.err.println(MessageFormat.format(bundle.getString("error.deleteFile"), moduleDataDir.resolve(name + suffix)));
+                    }
+                }
+            }
+        }
+    }
+
+    private String readInfoName(Path sqliteFile) {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + sqliteFile.toAbsolutePath());
+             PreparedStatement pstmt = conn.prepareStatement("SELECT value FROM info WHERE name = 'name'");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
     private String reconstructSqliteName(String originalFileName, String cleanModuleName) {
         if (!originalFileName.toLowerCase().endsWith(".sqlite3")) {
             return originalFileName;
@@ -819,12 +1610,28 @@ public class ModuleManager {
         return cleanModuleName + ".SQLite3";
     }
 
-    private void recordInstallation(CachedModule mod, Map<String, Path> files) throws IOException {
+    /**
+     * Records an installation in one transaction. When an existing installation is
+     * replaced, its rows are swapped for the new ones in the same transaction and its
+     * files that the new version no longer ships are deleted afterwards.
+     */
+    private void recordInstallation(CachedModule mod, Map<String, Path> files, InstalledModule replaced) throws IOException {
         Path installedDbPath = modulePath.resolve("mybible_installed.db");
 
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + installedDbPath)) {
             conn.setAutoCommit(false);
 
+            if (replaced != null) {
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM installed_files WHERE module_name = ?")) {
+                    pstmt.setString(1, replaced.name);
+                    pstmt.executeUpdate();
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM installed_modules WHERE name = ?")) {
+                    pstmt.setString(1, replaced.name);
+                    pstmt.executeUpdate();
+                }
+            }
+
             String modSql = "INSERT INTO installed_modules " +
                 "(name, language, description, type, updatedate, installdate) VALUES (?, ?, ?, ?, ?, ?)";
 
@@ -856,6 +1663,19 @@ public class ModuleManager {
             throw new IOException(MessageFormat.format(
                 bundle.getString("error.recordInstall"), e.getMessage()), e);
         }
+
+        if (replaced != null && replaced.files != null) {
+            for (String fileName : replaced.files) {
+                if (files.containsKey(fileName)) continue;
+                try {
+                    Files.deleteIfExists(modulePath.resolve(fileName));
+                } catch (IOException e) {
+                    if (verbosity > 0) {
+                        System.err.println(MessageFormat.format(bundle.getString("error.deleteFile"), modulePath.resolve(fileName)));
+                    }
+                }
+            }
+        }
     }
 
     public boolean removeModule(String name) throws IOException {
@@ -868,6 +1688,7 @@ public class ModuleManager {
             return false;
         }
 
+        invalidateModuleData(installed.name, installed.files);
         for (String fileName : installed.files) {
             Path filePath = modulePath.resolve(fileName);
             if (Files.exists(filePath)) {
@@ -911,22 +1732,27 @@ public class ModuleManager {
     public int upgradeModules(List<String> moduleNames, ProgressCallback progressCallback) throws IOException {
         List<String> toUpgrade = new ArrayList<>();
 
+        List<UpgradableModule> upgradable = listUpgradableModules(null, null, null, null);
         if (moduleNames == null || moduleNames.isEmpty()) {
-            List<UpgradableModule> upgradable = listUpgradableModules(null, null, null, null);
             toUpgrade = upgradable.stream().map(u -> u.installed.name).collect(Collectors.toList());
         } else {
+            Map<String, String> upgradableNames = new HashMap<>();
+            for (UpgradableModule u : upgradable) {
+                upgradableNames.put(u.installed.name.toLowerCase(Locale.ROOT), u.installed.name);
+            }
+            Set<String> installedNames = null;
             for (String name : moduleNames) {
-                InstalledModule inst = getInstalledModule(name);
-                if (inst == null) {
-                    if (verbosity > 0) {
-                        System.out.println(MessageFormat.format(bundle.getString("msg.notInstalled"), name));
-                    }
+                String match = upgradableNames.get(name.toLowerCase(Locale.ROOT));
+                if (match != null) {
+                    toUpgrade.add(match);
                     continue;
                 }
-
-                CachedModule latest = getCachedModule(name, null);
-                if (latest != null && latest.updateDate.compareTo(inst.updateDate) > 0) {
-                    toUpgrade.add(name);
+                if (installedNames == null) {
+                    installedNames = listInstalledModules(null, null, null, null).stream()
+                        .map(m -> m.name.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+                }
+                if (!installedNames.contains(name.toLowerCase(Locale.ROOT)) && verbosity > 0) {
+                    System.out.println(MessageFormat.format(bundle.getString("msg.notInstalled"), name));
                 }
             }
         }
@@ -938,23 +1764,16 @@ public class ModuleManager {
             return 0;
         }
 
-        int upgraded = 0;
-        for (String name : toUpgrade) {
-            if (verbosity > 0) {
-                System.out.println(MessageFormat.format(bundle.getString("msg.upgrading"), name));
-            }
-
-            if (removeModule(name) && installModule(name, null, false, progressCallback)) {
-                upgraded++;
-            }
+        InstallResult result = runInstallBatch(toUpgrade, null, true, "msg.upgrading", progressCallback);
+        for (Map.Entry<String, IOException> failure : result.failed.entrySet()) {
+            System.err.println(MessageFormat.format(bundle.getString("error.mod.installFailed"), failure.getKey(), failure.getValue().getMessage()));
         }
-
-        return upgraded;
+        return result.installed.size();
     }
 
     public List<String> listModuleVersions(String name) throws IOException {
         List<String> versions = new ArrayList<>();
-        String sql = "SELECT DISTINCT update_date FROM cached_modules WHERE LOWER(name) LIKE LOWER(?) ORDER BY update_date DESC";
+        String sql = "SELECT DISTINCT update_date FROM cached_modules WHERE name_lc = lower(?) ORDER BY update_date DESC";
 
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + cacheDbPath);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -987,6 +1806,7 @@ public class ModuleManager {
                 System.out.println(bundle.getString("msg.cachePurged"));
             }
         }
+        downloadCache.reset();
     }
 
     private void deleteDirectory(Path dir) throws IOException {
@@ -1044,6 +1864,31 @@ public class ModuleManager {
         }
     }
 
+    public static class InstallResult {
+        public final List<String> installed = new ArrayList<>();
+        public final List<String> skipped = new ArrayList<>();
+        public final Map<String, IOException> failed = new LinkedHashMap<>();
+    }
+
+    private static class InstallJob {
+        final String name;
+        final CachedModule mod;
+        final List<String> urls;
+        final InstalledModule existing;
+        // Null until the zip is found in the download cache or downloaded
+        Path zipPath;
+        // Entries extracted while streaming the download, waiting to be moved into place
+        StagedModule staged;
+
+        InstallJob(String name, CachedModule mod, List<String> urls, InstalledModule existing, Path zipPath) {
+            this.name = name;
+            this.mod = mod;
+            this.urls = urls;
+            this.existing = existing;
+            this.zipPath = zipPath;
+        }
+    }
+
     public static class InstalledModule {
         public final String name;
         public final String language;
@@ -1797,6 +2642,80 @@ private void recordFileInstallation(ModuleFileInfo moduleInfo,
     }
 
     // Helper classes
+    private static class RegistryFetch {
+        final String fileName;
+        final boolean zipped;
+        final Path cachedPath;
+        String url;
+        boolean notModified;
+        List<CachedModule> modules;
+        String hash;
+        String etag;
+        Throwable error;
+        // The HTTP exchange and, once the headers arrived, the body being read
+        volatile CompletableFuture<HttpResponse<InputStream>> exchange;
+        volatile InputStream body;
+
+        RegistryFetch(String fileName, boolean zipped, Path cachedPath) {
+            this.fileName = fileName;
+            this.zipped = zipped;
+            this.cachedPath = cachedPath;
+        }
+
+        // Cancelling a stage that depends on the exchange leaves the download running, so
+        // the exchange itself is cancelled and a body already streaming is closed
+        void cancel() {
+            CompletableFuture<HttpResponse<InputStream>> pending = exchange;
+            if (pending != null) {
+                pending.cancel(true);
+            }
+            InputStream stream = body;
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // The reading thread fails and cleans up
+                }
+            }
+        }
+    }
+
+    // Passes everything read through to a copy, including bytes consumed by skip()
+    private static class CopyingInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        CopyingInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) copy.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) copy.write(buffer, offset, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[8192];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) break;
+                skipped += read;
+            }
+            return skipped;
+        }
+    }
+
     private static class ModuleFileInfo {
         String moduleName;
         String moduleType;
@@ -1839,5 +2758,13 @@ private void recordFileInstallation(ModuleFileInfo moduleInfo,
     @FunctionalInterface
     public interface ProgressCallback {
         void update(int current, int total, String message);
+
+        /**
+         * Progress of one module within a batch install; update() then carries the
+         * aggregate progress in modules. By default reported like any other update.
+         */
+        default void moduleUpdate(String moduleName, int current, int total, String message) {
+            update(current, total, moduleName + ": " + message);
+        }
     }
 }
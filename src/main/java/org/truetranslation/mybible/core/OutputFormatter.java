@@ -1,12 +1,9 @@
 package org.truetranslation.mybible.core;
 
-import org.truetranslation.mybible.core.model.Book;
 import org.truetranslation.mybible.core.model.Verse;
 import org.truetranslation.mybible.core.model.Reference;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -20,6 +17,7 @@ public class OutputFormatter {
     private final String moduleName;
     private final String moduleLanguage;
     private final String userLanguage;
+    private final ResolvedBookView bookView;
 
     // --- ANSI Escape Codes ---
     private static final String RESET_TO_NORMAL = "\u001B[0m";
@@ -37,6 +35,7 @@ public class OutputFormatter {
         this.moduleName = moduleName;
         this.moduleLanguage = moduleLanguage != null ? moduleLanguage : "en";
         this.userLanguage = userLanguage;
+        this.bookView = defaultBookMapper.resolve(userLanguage, this.moduleLanguage, moduleBookMapper);
     }
 
     private String createSimplePlainText(String text) {
@@ -152,29 +151,13 @@ public class OutputFormatter {
 
         final String userProvidedShortName = (reference != null) ? reference.getBookName() : null;
 
-        // Use language-aware default book lookup
-        Optional<Book> defaultBookOpt = defaultBookMapper.getBook(verse.getBookNumber(), userLanguage, moduleLanguage);
-        if (!defaultBookOpt.isPresent()) {
-            // Fallback to regular lookup if language-specific lookup fails
-            defaultBookOpt = defaultBookMapper.getBook(verse.getBookNumber());
-        }
-
-        Optional<Book> moduleBookOpt = moduleBookMapper.getBook(verse.getBookNumber());
-
-        String defaultFullName = defaultBookOpt.map(Book::getFullName).orElse("");
-
-        String defaultAbbrName = defaultBookOpt.map(book -> 
-            (userProvidedShortName != null && book.getShortNames().contains(userProvidedShortName))
-                ? userProvidedShortName 
-                : book.getShortNames().stream().findFirst().orElse("")
-        ).orElse("");
-
-        String moduleFullName = moduleBookOpt.map(Book::getFullName).orElse(defaultFullName);
+        // Language-aware default and module names, resolved once per formatter
+        ResolvedBookView.Entry bookEntry = bookView.get(verse.getBookNumber());
 
-        String moduleShortName = moduleBookOpt.map(book -> {
-            List<String> shortNames = book.getShortNames();
-            return (shortNames.size() > 1) ? shortNames.get(1) : shortNames.stream().findFirst().orElse(defaultAbbrName);
-        }).orElse(defaultAbbrName);
+        String defaultFullName = bookEntry.fullName;
+        String defaultAbbrName = bookEntry.abbreviationFor(userProvidedShortName);
+        String moduleFullName = bookEntry.moduleFullName;
+        String moduleShortName = bookEntry.moduleShortNameOr(defaultAbbrName);
 
         String tempResult = result.replace("%T", "%%TEMP_T%%");
 
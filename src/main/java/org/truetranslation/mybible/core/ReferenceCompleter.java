@@ -0,0 +1,164 @@
+package org.truetranslation.mybible.core;
+
+import org.truetranslation.mybible.core.model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * In-memory completion index for Bible references.
+ * Completes book names (resolved for a user/module language pair) by prefix, then
+ * chapter and verse numbers taken from a module's verse index. Everything is
+ * precomputed in the constructor, so complete() never touches the module database.
+ */
+public class ReferenceCompleter {
+
+    private final BookMapper bookMapper;
+    // Normalized names sorted for binary search, with the book each one belongs to
+    private final String[] sortedKeys;
+    private final int[] keyBooks;
+    private final String[] keyNames;
+    // Suggested display name per book number
+    private final Map<Integer, String> displayNames = new HashMap<>();
+    // Chapters present in the module per book, ascending, and the last verse of each
+    private final Map<Integer, int[]> chaptersByBook = new HashMap<>();
+    private final Map<Integer, Integer> lastVerses;
+
+    public ReferenceCompleter(BookMapper bookMapper, String userLanguage, String moduleLanguage, Map<Integer, Integer> verseIndex) {
+        this.bookMapper = bookMapper;
+        this.lastVerses = verseIndex;
+
+        Map<Integer, List<Integer>> chapters = new TreeMap<>();
+        for (Integer key : verseIndex.keySet()) {
+            chapters.computeIfAbsent(key / 1000, k -> new ArrayList<>()).add(key % 1000);
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : chapters.entrySet()) {
+            int[] numbers = entry.getValue().stream().mapToInt(Integer::intValue).sorted().toArray();
+            chaptersByBook.put(entry.getKey(), numbers);
+        }
+
+        TreeMap<String, Integer> keys = new TreeMap<>();
+        Map<String, String> names = new HashMap<>();
+        for (Integer bookNumber : chapters.keySet()) {
+            Optional<Book> book = bookMapper.getBook(bookNumber, userLanguage, moduleLanguage);
+            if (!book.isPresent()) {
+                book = bookMapper.getBook(bookNumber);
+            }
+            if (!book.isPresent()) continue;
+
+            displayNames.put(bookNumber, book.get().getFullName());
+            for (String name : book.get().getShortNames()) {
+                String key = BookNameMatcher.normalize(name);
+                if (!key.isEmpty() && keys.putIfAbsent(key, bookNumber) == null) names.put(key, name);
+            }
+        }
+        this.sortedKeys = keys.keySet().toArray(new String[0]);
+        this.keyBooks = keys.values().stream().mapToInt(Integer::intValue).toArray();
+        this.keyNames = new String[sortedKeys.length];
+        for (int i = 0; i < sortedKeys.length; i++) keyNames[i] = names.get(sortedKeys[i]);
+    }
+
+    /**
+     * Returns complete replacement texts for the input. Only the part after the last ';' or
+     * ',' (the separators ReferenceParser accepts) is completed; anything in front of it is
+     * kept as typed.
+     */
+    public List<String> complete(String input, int limit) {
+        List<String> result = new ArrayList<>();
+        if (input == null || limit <= 0) return result;
+
+        int split = Math.max(input.lastIndexOf(';'), input.lastIndexOf(',')) + 1;
+        String head = input.substring(0, split);
+        String segment = input.substring(split);
+        if (split > 0) head += " ";
+        segment = segment.trim();
+        if (segment.isEmpty()) return result;
+
+        // The book name ends at the last letter; chapter and verse follow it
+        int bookEnd = segment.length();
+        while (bookEnd > 0 && !Character.isLetter(segment.charAt(bookEnd - 1)) && segment.charAt(bookEnd - 1) != '.') {
+            bookEnd--;
+        }
+        if (bookEnd == 0) return result;
+        String bookPart = segment.substring(0, bookEnd).trim();
+        String rest = segment.substring(bookEnd).trim();
+        boolean typingName = rest.isEmpty() && !input.endsWith(" ");
+
+        if (typingName) {
+            completeBooks(head, bookPart, limit, result);
+            return result;
+        }
+
+        Optional<Book> book = bookMapper.getBook(bookPart.replace(".", "").trim().replaceAll("\\s+", " "));
+        if (!book.isPresent()) return result;
+        int[] chapters = chaptersByBook.get(book.get().getBookNumber());
+        if (chapters == null) return result;
+
+        String prefix = head + bookPart + " ";
+        int colon = rest.indexOf(':');
+        if (colon < 0) {
+            if (!rest.chars().allMatch(Character::isDigit)) return result;
+            for (int chapter : chapters) {
+                if (result.size() >= limit) break;
+                if (String.valueOf(chapter).startsWith(rest)) result.add(prefix + chapter);
+            }
+            return result;
+        }
+
+        String chapterText = rest.substring(0, colon).trim();
+        String verseText = rest.substring(colon + 1).trim();
+        if (chapterText.isEmpty() || !chapterText.chars().allMatch(Character::isDigit)) return result;
+        int chapter;
+        try {
+            chapter = Integer.parseInt(chapterText);
+        } catch (NumberFormatException e) {
+            return result;
+        }
+        Integer lastVerse = lastVerses.get(book.get().getBookNumber() * 1000 + chapter);
+        if (lastVerse == null) return result;
+
+        // A range within the chapter continues after the last '-'
+        int dash = verseText.lastIndexOf('-');
+        String versePrefix = prefix + chapter + ":";
+        int firstVerse = 1;
+        if (dash >= 0) {
+            String startText = verseText.substring(0, dash).trim();
+            if (startText.isEmpty() || !startText.chars().allMatch(Character::isDigit)) return result;
+            try {
+                firstVerse = Integer.parseInt(startText) + 1;
+            } catch (NumberFormatException e) {
+                return result;
+            }
+            versePrefix += startText + "-";
+            verseText = verseText.substring(dash + 1).trim();
+        }
+        if (!verseText.chars().allMatch(Character::isDigit)) return result;
+        for (int verse = firstVerse; verse <= lastVerse && result.size() < limit; verse++) {
+            if (String.valueOf(verse).startsWith(verseText)) result.add(versePrefix + verse);
+        }
+        return result;
+    }
+
+    private void completeBooks(String head, String bookPart, int limit, List<String> result) {
+        String query = BookNameMatcher.normalize(bookPart);
+        if (query.isEmpty()) return;
+
+        int index = Arrays.binarySearch(sortedKeys, query);
+        int from = index >= 0 ? index : -index - 1;
+        // One suggestion per book, in canonical book order
+        TreeMap<Integer, String> perBook = new TreeMap<>();
+        for (int i = from; i < sortedKeys.length && sortedKeys[i].startsWith(query); i++) {
+            perBook.putIfAbsent(keyBooks[i], keyNames[i]);
+        }
+        for (Map.Entry<Integer, String> entry : perBook.entrySet()) {
+            if (result.size() >= limit) break;
+            String fullName = displayNames.get(entry.getKey());
+            result.add(head + (BookNameMatcher.normalize(fullName).startsWith(query) ? fullName : entry.getValue()));
+        }
+    }
+}
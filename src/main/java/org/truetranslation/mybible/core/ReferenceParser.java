@@ -45,18 +45,34 @@ public class ReferenceParser {
         boolean wasVerse;
     }
 
+    private static final int MAX_SUGGESTIONS = 3;
+
     private final BookMapper bookMapper;
     private final Map<Integer, Integer> verseIndex;
+    private final VerseIndexManager.VerseIndex index;
     private final ResourceBundle bundle;
 
+    /**
+     * Creates a parser that counts verses as if every chapter ran from 1 to its last verse.
+     */
     public ReferenceParser(BookMapper bookMapper, Map<Integer, Integer> verseIndex) {
+        this(bookMapper, indexWithoutGaps(verseIndex));
+    }
+
+    /**
+     * Creates a parser whose verse counts and offsets skip the verses a module does not have.
+     */
+    public ReferenceParser(BookMapper bookMapper, VerseIndexManager.VerseIndex index) {
         this.bookMapper = bookMapper;
-        this.verseIndex = verseIndex;
-        ConfigManager configManager = new ConfigManager();
-        ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(
-            configManager.getDefaultConfigDir()
-        );
-        this.bundle = externalLoader.getBundle("i18n.messages");
+        this.index = index;
+        this.verseIndex = index.lastVerses;
+        this.bundle = AppContext.get().messages();
+    }
+
+    private static VerseIndexManager.VerseIndex indexWithoutGaps(Map<Integer, Integer> verseIndex) {
+        VerseIndexManager.VerseIndex index = new VerseIndexManager.VerseIndex();
+        index.lastVerses = verseIndex;
+        return index;
     }
 
     public List<RangeWithCount> parseWithCounts(String rawReference) {
@@ -128,9 +144,11 @@ public class ReferenceParser {
 
         for (int ch = 1; ch < targetChapter; ch++) {
             int chapterKey = bookNum * 1000 + ch;
-            offset += verseIndex.getOrDefault(chapterKey, 0);
+            offset += index.countVerses(chapterKey, 1, Integer.MAX_VALUE);
         }
-        offset += targetVerse;
+        List<Integer> missing = index.missingVerses.get(bookNum * 1000 + targetChapter);
+        long missingBefore = missing == null ? 0 : missing.stream().filter(verse -> verse < targetVerse).count();
+        offset += targetVerse - (int) missingBefore;
         return offset;
     }
 
@@ -138,21 +156,11 @@ public class ReferenceParser {
         int startKey = range.start.getBook() * 1000 + range.start.getChapter();
         int endKey = range.end.getBook() * 1000 + range.end.getChapter();
         SortedMap<Integer, Integer> relevantChapters = new TreeMap<>(verseIndex).subMap(startKey, true, endKey, true);
-        if (relevantChapters.isEmpty()) return 0;
-        if (startKey == endKey) return range.end.getVerse() - range.start.getVerse() + 1;
         int totalVerses = 0;
-        boolean firstChapter = true;
-        for (Map.Entry<Integer, Integer> chapterEntry : relevantChapters.entrySet()) {
-            int currentKey = chapterEntry.getKey();
-            int versesInChapter = chapterEntry.getValue();
-            if (firstChapter) {
-                totalVerses += versesInChapter - range.start.getVerse() + 1;
-                firstChapter = false;
-            } else if (currentKey == endKey) {
-                totalVerses += range.end.getVerse();
-            } else {
-                totalVerses += versesInChapter;
-            }
+        for (Integer chapterKey : relevantChapters.keySet()) {
+            int fromVerse = chapterKey == startKey ? range.start.getVerse() : 1;
+            int toVerse = chapterKey == endKey ? range.end.getVerse() : Integer.MAX_VALUE;
+            totalVerses += index.countVerses(chapterKey, fromVerse, toVerse);
         }
         return totalVerses;
     }
@@ -214,6 +222,18 @@ public class ReferenceParser {
                         break;
                     }
                 }
+
+                // Typo-tolerant fallback, only for the tokens in front of a chapter/verse
+                for (int i = tokens.length; bookNum == null && i > 0 && i >= tokens.length - 1; i--) {
+                    if (!looksLikeBookName(tokens[i - 1])) continue;
+                    String name = String.join(" ", Arrays.copyOfRange(tokens, 0, i));
+                    Optional<Book> optBook = bookMapper.findClosestBook(name);
+                    if (optBook.isPresent()) {
+                        bookNum = optBook.get().getBookNumber();
+                        bookString = name;
+                        bookTokensCount = i;
+                    }
+                }
             }
 
             boolean bookWasExplicitlyFound = bookNum != null;
@@ -227,6 +247,9 @@ public class ReferenceParser {
             if (bookNum == null || !bookExistsInModule(bookNum)) {
                 String message = MessageFormat.format(bundle.getString("parse.error.bookNotFound"), tokens[0]);
                 System.err.println(message);
+                if (bookNum == null) {
+                    printSuggestions(tokens);
+                }
                 return null;
             }
 
@@ -282,6 +305,25 @@ public class ReferenceParser {
         }
     }
 
+    // Chapter/verse tokens and bare numbers are never treated as (misspelled) book names
+    private boolean looksLikeBookName(String token) {
+        return token.chars().anyMatch(Character::isLetter) && token.chars().noneMatch(Character::isDigit);
+    }
+
+    private void printSuggestions(String[] tokens) {
+        int nameTokens = tokens.length > 1 && !looksLikeBookName(tokens[tokens.length - 1]) ? tokens.length - 1 : tokens.length;
+        String input = String.join(" ", Arrays.copyOfRange(tokens, 0, nameTokens));
+        if (input.chars().noneMatch(Character::isLetter)) return;
+
+        List<String> names = bookMapper.suggestBooks(input, MAX_SUGGESTIONS).stream()
+                .filter(suggestion -> bookExistsInModule(suggestion.book.getBookNumber()))
+                .map(suggestion -> suggestion.name)
+                .collect(Collectors.toList());
+        if (!names.isEmpty()) {
+            System.err.println(MessageFormat.format(bundle.getString("parse.hint.didYouMean"), String.join(", ", names)));
+        }
+    }
+
     private int compareReferences(Reference a, Reference b) {
         int bookCompare = Integer.compare(a.getBook(), b.getBook());
         if (bookCompare != 0) return bookCompare;
@@ -0,0 +1,268 @@
+package org.truetranslation.mybible.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streaming parsers for module registries. Modules are emitted one by one while the
+ * input is read, so neither the zip, the JSON text nor a JSON tree is held in memory.
+ */
+final class RegistryParser {
+
+    private RegistryParser() {
+    }
+
+    /**
+     * Parses a zipped registry (the first .json entry of the zip) with "hosts" and "downloads".
+     * Downloads listed before the hosts are kept until the hosts are known.
+     */
+    static void parseZipped(InputStream in, String registryUrl, Consumer<ModuleManager.CachedModule> sink) throws IOException {
+        ZipInputStream zis = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (entry.getName().endsWith(".json")) {
+                parseRegistryJson(new InputStreamReader(zis, StandardCharsets.UTF_8), registryUrl, sink);
+                return;
+            }
+        }
+    }
+
+    private static void parseRegistryJson(Reader input, String registryUrl, Consumer<ModuleManager.CachedModule> sink) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        // Registries were read with JsonParser before, which accepts the same lenient syntax
+        reader.setLenient(true);
+        Map<String, HostTemplate> hosts = null;
+        // Downloads read before the hosts array; dropped if no hosts follow
+        List<Download> pending = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if ("hosts".equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                hosts = readHosts(reader);
+                for (Download download : pending) {
+                    download.emit(hosts, registryUrl, sink);
+                }
+                pending.clear();
+            } else if ("downloads".equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Download download = readDownload(reader);
+                    if (download == null) continue;
+                    if (hosts != null) {
+                        download.emit(hosts, registryUrl, sink);
+                    } else {
+                        pending.add(download);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Parses an .extra registry: a JSON object with a "modules" array.
+     */
+    static void parseExtra(InputStream in, String registryUrl, Consumer<ModuleManager.CachedModule> sink) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"modules".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Map<String, String> mod = readFlatObject(reader);
+                if (mod == null) continue;
+
+                String fileName = mod.get("file_name");
+                String downloadUrl = mod.get("download_url");
+                if (downloadUrl == null || fileName == null || mod.get("description") == null || mod.get("update_date") == null) {
+                    continue;
+                }
+                String moduleName = fileName.endsWith(".zip") ? fileName.substring(0, fileName.length() - 4) : fileName;
+
+                sink.accept(new ModuleManager.CachedModule(
+                    moduleName,
+                    mod.get("language_code"),
+                    mod.get("description"),
+                    mod.get("update_date"),
+                    downloadUrl,
+                    fileName + ".zip",
+                    extractModuleType(downloadUrl),
+                    null,
+                    registryUrl
+                ));
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    static String extractModuleType(String downloadUrl) {
+        try {
+            String urlFileName = downloadUrl.substring(downloadUrl.lastIndexOf('/') + 1);
+            String decoded = URLDecoder.decode(urlFileName, StandardCharsets.UTF_8);
+            String withoutZip = decoded.endsWith(".zip") ? decoded.substring(0, decoded.length() - 4) : decoded;
+            String[] parts = withoutZip.split("\\.");
+            if (parts.length > 1) {
+                return parts[parts.length - 1];
+            }
+        } catch (Exception e) {
+        }
+        return "bible";
+    }
+
+    // A host path with its "%s" placeholder split out once, instead of per download URL
+    private static class HostTemplate {
+        final String path;
+        final String prefix;
+        final String suffix;
+        final boolean single;
+
+        HostTemplate(String path) {
+            this.path = path;
+            int index = path.indexOf("%s");
+            this.single = index >= 0 && path.indexOf("%s", index + 2) < 0;
+            this.prefix = single ? path.substring(0, index) : path;
+            this.suffix = single ? path.substring(index + 2) : "";
+        }
+
+        String resolve(String filePart) {
+            return single ? prefix + filePart + suffix : path.replace("%s", filePart);
+        }
+    }
+
+    private static class Download {
+        String name;
+        String fileName;
+        String language;
+        String description;
+        String updateDate;
+        String size;
+        final List<String> urls = new ArrayList<>(2);
+
+        void emit(Map<String, HostTemplate> hosts, String registryUrl, Consumer<ModuleManager.CachedModule> sink) {
+            for (String urlTemplate : urls) {
+                int aliasStart = urlTemplate.indexOf("{") + 1;
+                int aliasEnd = urlTemplate.indexOf("}");
+                if (aliasStart == 0 || aliasEnd == -1) continue;
+
+                HostTemplate host = hosts.get(urlTemplate.substring(aliasStart, aliasEnd));
+                if (host == null) continue;
+
+                String downloadUrl = host.resolve(urlTemplate.substring(aliasEnd + 1));
+                sink.accept(new ModuleManager.CachedModule(
+                    name, language, description, updateDate, downloadUrl,
+                    fileName != null ? fileName : name,
+                    extractModuleType(downloadUrl), size, registryUrl));
+            }
+        }
+    }
+
+    private static Map<String, HostTemplate> readHosts(JsonReader reader) throws IOException {
+        Map<String, HostTemplate> hosts = new HashMap<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Map<String, String> host = readFlatObject(reader);
+            if (host != null && host.get("alias") != null && host.get("path") != null) {
+                hosts.put(host.get("alias"), new HostTemplate(host.get("path")));
+            }
+        }
+        reader.endArray();
+        return hosts;
+    }
+
+    private static Download readDownload(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        Download download = new Download();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            switch (field) {
+                case "abr": download.name = readString(reader); break;
+                case "fil": download.fileName = readString(reader); break;
+                case "lng": download.language = readString(reader); break;
+                case "des": download.description = readString(reader); break;
+                case "upd": download.updateDate = readString(reader); break;
+                case "siz": download.size = readString(reader); break;
+                case "url":
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            String url = readString(reader);
+                            if (url != null) download.urls.add(url);
+                        }
+                        reader.endArray();
+                    } else {
+                        String url = readString(reader);
+                        if (url != null) download.urls.add(url);
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (download.name == null || download.urls.isEmpty() || download.description == null || download.updateDate == null) {
+            return null;
+        }
+        return download;
+    }
+
+    // Reads an object of scalar fields; nested values are skipped
+    private static Map<String, String> readFlatObject(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            String value = readString(reader);
+            if (value != null) values.put(field, value);
+        }
+        reader.endObject();
+        return values;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.truetranslation.mybible.core;
+
+import org.truetranslation.mybible.core.model.Book;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, array-backed view of a BookMapper resolved for one
+ * (user language, module language) pair. Created by {@link BookMapper#resolve}.
+ */
+public final class ResolvedBookView {
+
+    public static final class Entry {
+        public final int bookNumber;
+        public final Book book;
+        public final String fullName;
+        public final String shortName;
+        public final String primaryAbbreviation;
+        public final Book moduleBook;
+        public final String moduleFullName;
+        public final String moduleShortName;
+        public final List<String> allNames;
+
+        Entry(int bookNumber, Book book, String primaryAbbreviation, Book moduleBook, List<String> allNames) {
+            this.bookNumber = bookNumber;
+            this.book = book;
+            this.fullName = book != null ? book.getFullName() : "";
+            this.shortName = book != null ? book.getShortName() : "";
+            this.primaryAbbreviation = primaryAbbreviation;
+            this.moduleBook = moduleBook;
+            this.moduleFullName = moduleBook != null ? moduleBook.getFullName() : fullName;
+            this.moduleShortName = moduleBook != null ? moduleShortNameOf(moduleBook) : null;
+            this.allNames = Collections.unmodifiableList(allNames);
+        }
+
+        /**
+         * Returns the name the user typed if it belongs to this book, otherwise the first short name.
+         */
+        public String abbreviationFor(String userProvidedShortName) {
+            if (userProvidedShortName != null && book != null && book.getShortNames().contains(userProvidedShortName)) {
+                return userProvidedShortName;
+            }
+            return shortName;
+        }
+
+        /**
+         * Returns the module's own abbreviation, or the given fallback if the module has none.
+         */
+        public String moduleShortNameOr(String fallback) {
+            return moduleShortName != null ? moduleShortName : fallback;
+        }
+
+        // Null when the module has no short names, so moduleShortNameOr falls back to the default abbreviation
+        private static String moduleShortNameOf(Book moduleBook) {
+            List<String> shortNames = moduleBook.getShortNames();
+            if (shortNames == null || shortNames.isEmpty()) return null;
+            return (shortNames.size() > 1) ? shortNames.get(1) : shortNames.get(0);
+        }
+    }
+
+    private static final Entry EMPTY = new Entry(0, null, "", null, Collections.emptyList());
+
+    private final Entry[] entries;
+    private final BookMapper moduleBookMapper;
+
+    ResolvedBookView(Entry[] entries, BookMapper moduleBookMapper) {
+        this.entries = entries;
+        this.moduleBookMapper = moduleBookMapper;
+    }
+
+    /**
+     * Returns the entry for a book number; unknown numbers yield an entry with empty names.
+     */
+    public Entry get(int bookNumber) {
+        if (bookNumber < 0 || bookNumber >= entries.length || entries[bookNumber] == null) {
+            return EMPTY;
+        }
+        return entries[bookNumber];
+    }
+
+    public boolean contains(int bookNumber) {
+        return bookNumber >= 0 && bookNumber < entries.length && entries[bookNumber] != null;
+    }
+
+    boolean isBuiltWith(BookMapper moduleBookMapper) {
+        return this.moduleBookMapper == moduleBookMapper;
+    }
+}
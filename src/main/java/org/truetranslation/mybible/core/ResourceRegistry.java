@@ -0,0 +1,203 @@
+package org.truetranslation.mybible.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The mappings, GUI themes and resource bundles that extensions can install. Readers get
+ * an immutable snapshot without locking; reload() publishes a new snapshot with a higher
+ * version, so a long-running process sees extensions installed after it started. current()
+ * also reloads when the mapping or theme folder was modified since the snapshot was taken,
+ * which covers extensions installed by another process.
+ */
+public final class ResourceRegistry {
+
+    private static final String MAPPING_SUFFIX = "_mapping.json";
+
+    /**
+     * Resources as they were when the snapshot was published. The mapping and theme
+     * directories are scanned on first use, once per snapshot.
+     */
+    public static final class Snapshot {
+        public final long version;
+        private final Path configDir;
+        private final Map<String, ResourceBundle> bundles;
+        // Modification times of the watched folders when the snapshot was published
+        private final long[] folderStamps;
+        private volatile Map<String, Path> mappings;
+        private volatile List<String> themes;
+
+        private Snapshot(long version, Path configDir, Map<String, ResourceBundle> bundles, long[] folderStamps) {
+            this.version = version;
+            this.configDir = configDir;
+            this.bundles = Collections.unmodifiableMap(bundles);
+            this.folderStamps = folderStamps;
+        }
+
+        /**
+         * Returns the mapping file for a prefix, from the config directory or its mapping
+         * folder (in that order), or null if there is none.
+         */
+        public Path mappingFile(String prefix) {
+            Map<String, Path> result = mappings;
+            if (result == null) {
+                Map<String, Path> scanned = new HashMap<>();
+                scanned.putAll(listFiles(configDir.resolve("mapping"), MAPPING_SUFFIX));
+                scanned.putAll(listFiles(configDir, MAPPING_SUFFIX));
+                result = Collections.unmodifiableMap(scanned);
+                mappings = result;
+            }
+            return result.get(prefix);
+        }
+
+        /**
+         * Returns the names of the saved and installed GUI themes, sorted.
+         */
+        public List<String> themeNames() {
+            List<String> result = themes;
+            if (result == null) {
+                result = listFiles(configDir.resolve("gui_themes"), ".json").keySet().stream()
+                    .sorted()
+                    .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+                themes = result;
+            }
+            return result;
+        }
+
+        private Snapshot withBundle(String baseName, ResourceBundle bundle) {
+            Map<String, ResourceBundle> updated = new HashMap<>(bundles);
+            updated.put(baseName, bundle);
+            Snapshot snapshot = new Snapshot(version, configDir, updated, folderStamps);
+            snapshot.mappings = mappings;
+            snapshot.themes = themes;
+            return snapshot;
+        }
+
+        // File name without the suffix to path, for the regular files directly in dir
+        private static Map<String, Path> listFiles(Path dir, String suffix) {
+            Map<String, Path> files = new HashMap<>();
+            if (!Files.isDirectory(dir)) {
+                return files;
+            }
+            try (Stream<Path> stream = Files.list(dir)) {
+                stream.filter(p -> p.getFileName().toString().endsWith(suffix) && Files.isRegularFile(p))
+                    .forEach(p -> {
+                        String name = p.getFileName().toString();
+                        files.put(name.substring(0, name.length() - suffix.length()), p);
+                    });
+            } catch (IOException e) {
+                System.err.println("Could not list " + dir + ": " + e.getMessage());
+            }
+            return files;
+        }
+    }
+
+    private final Path configDir;
+    private final ExternalResourceBundleLoader bundleLoader;
+    private final AtomicReference<Snapshot> current;
+    private final List<Consumer<Snapshot>> listeners = new CopyOnWriteArrayList<>();
+
+    ResourceRegistry(Path configDir, ExternalResourceBundleLoader bundleLoader) {
+        this.configDir = configDir;
+        this.bundleLoader = bundleLoader;
+        this.current = new AtomicReference<>(new Snapshot(1, configDir, new HashMap<>(), folderStamps()));
+    }
+
+    /**
+     * Returns the current snapshot, or a new one if the mapping or theme folder changed.
+     */
+    public Snapshot current() {
+        Snapshot snapshot = current.get();
+        long[] stamps = folderStamps();
+        if (Arrays.equals(stamps, snapshot.folderStamps)) {
+            return snapshot;
+        }
+        Snapshot fresh = new Snapshot(snapshot.version + 1, configDir, new HashMap<>(), stamps);
+        if (current.compareAndSet(snapshot, fresh)) {
+            notifyListeners(fresh);
+            return fresh;
+        }
+        // Another thread published a snapshot meanwhile
+        return current.get();
+    }
+
+    /**
+     * Returns a bundle for the default locale from the current snapshot, loading it into
+     * the snapshot on first use.
+     */
+    public ResourceBundle bundle(String baseName) {
+        ResourceBundle loaded = null;
+        long loadedVersion = 0;
+        while (true) {
+            Snapshot snapshot = current.get();
+            ResourceBundle bundle = snapshot.bundles.get(baseName);
+            if (bundle != null) {
+                return bundle;
+            }
+            // A bundle loaded before a reload may come from a replaced file, so it is loaded again
+            if (loaded == null || loadedVersion != snapshot.version) {
+                loaded = bundleLoader.getBundle(baseName);
+                loadedVersion = snapshot.version;
+            }
+            if (current.compareAndSet(snapshot, snapshot.withBundle(baseName, loaded))) {
+                return loaded;
+            }
+        }
+    }
+
+    /**
+     * Publishes a fresh snapshot, so that mappings, themes and bundles are read again
+     * on next use, and notifies the listeners with it.
+     */
+    public Snapshot reload() {
+        long[] stamps = folderStamps();
+        Snapshot snapshot = current.updateAndGet(previous -> new Snapshot(previous.version + 1, configDir, new HashMap<>(), stamps));
+        notifyListeners(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Registers a listener called, on the reloading thread, with each new snapshot.
+     */
+    public void addListener(Consumer<Snapshot> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Snapshot> listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(Snapshot snapshot) {
+        for (Consumer<Snapshot> listener : listeners) {
+            listener.accept(snapshot);
+        }
+    }
+
+    // Adding, removing or renaming a file in a folder updates the folder's modification time
+    private long[] folderStamps() {
+        return new long[] {
+            lastModified(configDir.resolve("mapping")),
+            lastModified(configDir.resolve("gui_themes"))
+        };
+    }
+
+    private static long lastModified(Path dir) {
+        try {
+            return Files.getLastModifiedTime(dir).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
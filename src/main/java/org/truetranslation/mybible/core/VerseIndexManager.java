@@ -2,19 +2,26 @@ package org.truetranslation.mybible.core;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
-import com.google.gson.reflect.TypeToken;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 import java.util.ResourceBundle;
@@ -22,96 +29,235 @@ import java.util.TreeMap;
 
 public class VerseIndexManager {
 
+    private static final String INDEX_SUFFIX = ".verseindex.json";
+
     private final Path moduleDataDir;
     private static final Gson GSON = new Gson();
-    private final Map<String, Map<Integer, Integer>> indexCache = new ConcurrentHashMap<>();
+    // Index loads running in this process, so concurrent callers share one scan per index file
+    private static final Map<Path, CompletableFuture<VerseIndex>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, VerseIndex> indexCache = new ConcurrentHashMap<>();
     private final ResourceBundle bundle;
     private final int verbosity;
 
+    /**
+     * Verse layout of a module, keyed by book_number * 1000 + chapter.
+     */
+    public static class VerseIndex {
+        // Highest verse number of each chapter
+        public Map<Integer, Integer> lastVerses = new TreeMap<>();
+        // Numbers between 1 and the last verse that the chapter does not have; only chapters with gaps are listed
+        public Map<Integer, List<Integer>> missingVerses = new TreeMap<>();
+
+        /**
+         * Counts the verses the chapter actually has from one verse number to another, inclusive.
+         */
+        public int countVerses(int chapterKey, int fromVerse, int toVerse) {
+            int last = lastVerses.getOrDefault(chapterKey, 0);
+            int from = Math.max(fromVerse, 1);
+            int to = Math.min(toVerse, last);
+            if (from > to) return 0;
+            int count = to - from + 1;
+            List<Integer> missing = missingVerses.get(chapterKey);
+            if (missing != null) {
+                for (int verse : missing) {
+                    if (verse >= from && verse <= to) count--;
+                }
+            }
+            return count;
+        }
+    }
+
     public VerseIndexManager(ConfigManager configManager, int verbosity) {
         this.moduleDataDir = configManager.getDefaultConfigDir().resolve("moduledata");
         this.verbosity = verbosity;
-        ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(
-            configManager.getDefaultConfigDir()
-        );
-        this.bundle = externalLoader.getBundle("i18n.messages");
+        this.bundle = AppContext.get().messages();
     }
 
+    /**
+     * Returns the last verse number of each chapter, keyed by book_number * 1000 + chapter.
+     */
     public Map<Integer, Integer> getVerseIndex(String moduleName, Path modulePath) {
-        if (indexCache.containsKey(moduleName)) {
-            return indexCache.get(moduleName);
+        return getIndex(moduleName, modulePath).lastVerses;
+    }
+
+    /**
+     * Returns the verse index of a module, read from moduledata or generated once and saved
+     * there. Generation is single-flight: callers in this process wait for the one in
+     * progress, and other processes wait on a lock file and then read what it saved.
+     */
+    public VerseIndex getIndex(String moduleName, Path modulePath) {
+        VerseIndex cached = indexCache.get(moduleName);
+        if (cached != null) {
+            return cached;
         }
 
-        Path indexFile = moduleDataDir.resolve(moduleName + ".allverses.json");
+        Path indexFile = moduleDataDir.resolve(moduleName + INDEX_SUFFIX);
+        CompletableFuture<VerseIndex> load = new CompletableFuture<>();
+        CompletableFuture<VerseIndex> running = inFlight.putIfAbsent(indexFile, load);
 
-        if (Files.exists(indexFile)) {
-            try (FileReader reader = new FileReader(indexFile.toFile())) {
-                Type type = new TypeToken<Map<Integer, Integer>>() {}.getType();
-                Map<Integer, Integer> index = GSON.fromJson(reader, type);
+        VerseIndex index;
+        if (running != null) {
+            index = running.join();
+        } else {
+            try {
+                index = loadIndex(moduleName, modulePath, indexFile);
+                load.complete(index);
+            } catch (RuntimeException e) {
+                load.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(indexFile, load);
+            }
+        }
+
+        // A failed generation is not cached, so the next call tries again
+        if (index == null) {
+            return new VerseIndex();
+        }
+        indexCache.put(moduleName, index);
+        return index;
+    }
+
+    private VerseIndex loadIndex(String moduleName, Path modulePath, Path indexFile) {
+        VerseIndex index = readIndex(indexFile);
+        if (index != null) {
+            return index;
+        }
+
+        Path lockFile = moduleDataDir.resolve(moduleName + INDEX_SUFFIX + ".lock");
+        try {
+            Files.createDirectories(moduleDataDir);
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Released when the channel closes
+                channel.lock();
+                // Another process may have saved the index while this one waited
+                index = readIndex(indexFile);
                 if (index != null) {
-                    indexCache.put(moduleName, index);
                     return index;
                 }
-            } catch (JsonSyntaxException e) {
-                System.err.println(bundle.getString("msg.cache.corrupt"));
-                try {
-                    Files.delete(indexFile);
-                } catch (IOException ioException) {
-                    System.err.println(MessageFormat.format(bundle.getString("msg.cache.deleteFailed"), ioException.getMessage()));
+                index = generateIndex(moduleName, modulePath);
+                if (index != null) {
+                    saveIndex(indexFile, index);
                 }
-            } catch (IOException e) {
-                System.err.println(MessageFormat.format(bundle.getString("msg.cache.readError"), e.getMessage()));
+                return index;
             }
+        } catch (IOException e) {
+            // Without the lock (e.g. a read-only config directory) the index is only kept in memory
+            System.err.println("Could not lock verse index file, keeping the index in memory: " + e.getMessage());
+            return generateIndex(moduleName, modulePath);
         }
-        return generateAndCacheIndex(moduleName, modulePath);
     }
 
-    private Map<Integer, Integer> generateAndCacheIndex(String moduleName, Path modulePath) {
-        Map<Integer, TreeMap<Integer, Integer>> tempIndex = new TreeMap<>();
+    private VerseIndex readIndex(Path indexFile) {
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            VerseIndex index = GSON.fromJson(reader, VerseIndex.class);
+            if (index != null && index.lastVerses != null && index.missingVerses != null) {
+                return index;
+            }
+        } catch (JsonSyntaxException e) {
+            System.err.println(bundle.getString("msg.cache.corrupt"));
+            try {
+                Files.delete(indexFile);
+            } catch (IOException ioException) {
+                System.err.println(MessageFormat.format(bundle.getString("msg.cache.deleteFailed"), ioException.getMessage()));
+            }
+        } catch (IOException e) {
+            System.err.println(MessageFormat.format(bundle.getString("msg.cache.readError"), e.getMessage()));
+        }
+        return null;
+    }
+
+    /**
+     * Reads the last verse and the number of verse rows of every chapter in one
+     * aggregate query, which SQLite answers from the verses index. Only chapters where the
+     * two disagree are read verse by verse to find the missing numbers.
+     * Returns null when the module cannot be read.
+     */
+    private VerseIndex generateIndex(String moduleName, Path modulePath) {
+        VerseIndex index = new VerseIndex();
+        List<Integer> gapChapters = new ArrayList<>();
         String url = "jdbc:sqlite:" + modulePath.toAbsolutePath();
-        String sql = "SELECT book_number, chapter, verse FROM verses";
+        String sql = "SELECT book_number, chapter, MAX(verse) AS last_verse, COUNT(*) AS verse_count "
+            + "FROM verses GROUP BY book_number, chapter";
 
         if (this.verbosity > 0) {
             System.out.println(MessageFormat.format(bundle.getString("msg.cache.generating"), moduleName));
         }
 
-        try (Connection conn = DriverManager.getConnection(url);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = DriverManager.getConnection(url)) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    int key = rs.getInt("book_number") * 1000 + rs.getInt("chapter");
+                    int lastVerse = rs.getInt("last_verse");
+                    index.lastVerses.put(key, lastVerse);
+                    if (rs.getInt("verse_count") != lastVerse) {
+                        gapChapters.add(key);
+                    }
+                }
+            }
 
-            while (rs.next()) {
-                int book = rs.getInt("book_number");
-                int chapter = rs.getInt("chapter");
-                int verse = rs.getInt("verse");
-                tempIndex.computeIfAbsent(book, k -> new TreeMap<>()).merge(chapter, verse, Integer::max);
+            if (!gapChapters.isEmpty()) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT DISTINCT verse FROM verses WHERE book_number = ? AND chapter = ? AND verse >= 1")) {
+                    for (int key : gapChapters) {
+                        int lastVerse = index.lastVerses.get(key);
+                        boolean[] present = new boolean[lastVerse + 1];
+                        pstmt.setInt(1, key / 1000);
+                        pstmt.setInt(2, key % 1000);
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                present[rs.getInt(1)] = true;
+                            }
+                        }
+                        List<Integer> missing = new ArrayList<>();
+                        for (int verse = 1; verse <= lastVerse; verse++) {
+                            if (!present[verse]) missing.add(verse);
+                        }
+                        // Chapters that only differ by a verse 0 have no gap
+                        if (!missing.isEmpty()) {
+                            index.missingVerses.put(key, missing);
+                        }
+                    }
+                }
             }
         } catch (SQLException e) {
             System.err.println(MessageFormat.format(bundle.getString("error.unexpected"), e.getMessage()));
-            return new ConcurrentHashMap<>();
+            return null;
         }
 
         if (this.verbosity > 0) {
             System.out.println(bundle.getString("msg.cache.complete"));
         }
+        return index;
+    }
 
-        Map<Integer, Integer> finalIndex = new TreeMap<>();
-        for (Map.Entry<Integer, TreeMap<Integer, Integer>> bookEntry : tempIndex.entrySet()) {
-            for (Map.Entry<Integer, Integer> chapterEntry : bookEntry.getValue().entrySet()) {
-                finalIndex.put(bookEntry.getKey() * 1000 + chapterEntry.getKey(), chapterEntry.getValue());
-            }
-        }
-
+    // Written to a temp file and renamed, so readers never see a partial index
+    private void saveIndex(Path indexFile, VerseIndex index) {
+        Path tempFile = null;
         try {
-            Files.createDirectories(moduleDataDir);
-            Path indexFile = moduleDataDir.resolve(moduleName + ".allverses.json");
-            try (FileWriter writer = new FileWriter(indexFile.toFile())) {
-                GSON.toJson(finalIndex, writer);
+            tempFile = Files.createTempFile(moduleDataDir, indexFile.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                GSON.toJson(index, writer);
+            }
+            try {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
             }
         } catch (IOException e) {
             System.err.println("Error saving verse index file: " + e.getMessage());
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    // Nothing left to clean up once the move succeeded
+                }
+            }
         }
-
-        indexCache.put(moduleName, finalIndex);
-        return finalIndex;
     }
 }
@@ -79,17 +79,14 @@ public class ConfigurationDialog extends JDialog {
             new ThemeInfo("Xcode Dark", FlatXcodeDarkIJTheme.class.getName())
     );
 
-    private static ConfigManager coreConfigManager = new ConfigManager();
+    private static ConfigManager coreConfigManager = AppContext.get().config();
 
     public ConfigurationDialog(JFrame owner, GuiConfigManager configManager) {
         super(owner, "Configuration", true);
         this.owner = owner;
         this.configManager = configManager;
         this.config = configManager.getConfig();
-        ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(
-            coreConfigManager.getDefaultConfigDir()
-        );
-        this.bundle = externalLoader.getBundle("i18n.gui");
+        this.bundle = AppContext.get().bundle("i18n.gui");
         this.chosenBackgroundColor = config.textAreaBackground;
 
         this.originalLaf = UIManager.getLookAndFeel();
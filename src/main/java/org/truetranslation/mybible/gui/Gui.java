@@ -30,12 +30,11 @@ import java.text.MessageFormat;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.Vector;
+import java.util.function.Consumer;
 import javax.swing.*;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -48,10 +47,10 @@ import javax.swing.text.StyledDocument;
 import javax.swing.text.rtf.RTFEditorKit;
 
 import org.truetranslation.mybible.core.*;
-import org.truetranslation.mybible.core.model.Book;
 import org.truetranslation.mybible.core.model.GuiVerse;
 import org.truetranslation.mybible.core.model.Reference;
 import org.truetranslation.mybible.core.model.Verse;
+import org.truetranslation.mybible.gui.HistoryStore.HistoryEntry;
 
 public class Gui extends JFrame {
 
@@ -88,7 +87,15 @@ public class Gui extends JFrame {
     private JTextPane textDisplayPane;
     private JScrollPane textScrollPane;
     private JComboBox<HistoryEntry> referenceInputField;
-    private final LinkedList<HistoryEntry> referenceHistory = new LinkedList<>();
+    private ReferenceAutoCompleter referenceAutoCompleter;
+    private String completerKey;
+    // Mappers of the last lookup, kept while the render key matches so their resolved book view is reused
+    private String bookMappersKey;
+    private BookMapper lookupModuleBookMapper;
+    private BookMapper lookupDefaultBookMapper;
+    private final HistoryStore historyStore;
+    private final HistoryComboBoxModel historyModel = new HistoryComboBoxModel();
+    private boolean updatingHistoryModel = false;
     private int historyIndex = -1;
     private JButton historyBackButton;
     private JButton historyFwdButton;
@@ -112,21 +119,21 @@ public class Gui extends JFrame {
     private final ConfigManager configManager;
     private final ModuleScanner moduleScanner;
     private final Runnable onWindowClosed;
+    private final Consumer<ResourceRegistry.Snapshot> resourceListener =
+        snapshot -> SwingUtilities.invokeLater(this::refreshReferenceCompleter);
     private final ResourceBundle bundle;
     private final GuiConfigManager guiConfigManager;
     private GuiConfig guiConfig;
     private Path customMappingPath = null;
 
     public Gui(String initialModule, String initialReference, Runnable onWindowClosed) {
-        this.configManager = new ConfigManager();
+        this.configManager = AppContext.get().config();
         this.moduleScanner = new ModuleScanner();
         this.onWindowClosed = onWindowClosed;
-        ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(
-            configManager.getDefaultConfigDir()
-        );
-        this.bundle = externalLoader.getBundle("i18n.gui");
+        this.bundle = AppContext.get().bundle("i18n.gui");
         this.guiConfigManager = new GuiConfigManager();
         this.guiConfig = guiConfigManager.getConfig();
+        this.historyStore = new HistoryStore(configManager.getDefaultConfigDir(), guiConfig.historySize);
 
         setTitle(bundle.getString("window.title"));
         loadAppIcon();
@@ -139,6 +146,8 @@ public class Gui extends JFrame {
         } else {
             loadLastUsedModule();
         }
+        refreshReferenceCompleter();
+        AppContext.get().resources().addListener(resourceListener);
         if (initialReference != null) {
             referenceInputField.getEditor().setItem(initialReference);
         }
@@ -219,7 +228,7 @@ public class Gui extends JFrame {
         gbc.gridy = 0; gbc.gridx = 0; gbc.weightx = 0;
         inputPanel.add(new JLabel(bundle.getString("label.bibleReference")), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
-        referenceInputField = new JComboBox<>();
+        referenceInputField = new JComboBox<>(historyModel);
         referenceInputField.setEditable(true);
         referenceInputField.setPrototypeDisplayValue(new HistoryEntry("Genesis 1:1-10", ""));
         referenceInputField.setEditor(new BasicComboBoxEditor() {
@@ -232,6 +241,8 @@ public class Gui extends JFrame {
                 }
             }
         });
+        referenceAutoCompleter = new ReferenceAutoCompleter(
+            (JTextField) referenceInputField.getEditor().getEditorComponent());
         inputPanel.add(referenceInputField, gbc);
         gbc.gridx = 2; gbc.weightx = 0;
         JButton showButton = new JButton(bundle.getString("button.show"));
@@ -359,7 +370,9 @@ public class Gui extends JFrame {
 
         // ---- Action listeners ----
         showButton.addActionListener(e -> updateAndDisplayVerseData());
-        referenceInputField.addActionListener(e -> updateAndDisplayVerseData());
+        referenceInputField.addActionListener(e -> {
+            if (!updatingHistoryModel) updateAndDisplayVerseData();
+        });
         moduleComboBox.addActionListener(e -> updateAndDisplayVerseData());
         languageComboBox.addActionListener(e -> updateAndDisplayVerseData());
         useModuleAbbrsCheckbox.addActionListener(e -> {
@@ -382,6 +395,7 @@ public class Gui extends JFrame {
         mapBrowseButton.addActionListener(e -> openMapBrowser());
         historyBackButton.addActionListener(e -> navigateBack());
         historyFwdButton.addActionListener(e -> navigateForward());
+        updateNavigationButtonStates();
         toggleAdvancedButton.addActionListener(e -> toggleAdvancedPanel());
     }
 
@@ -403,12 +417,12 @@ public class Gui extends JFrame {
 
     // History navigation
     private void navigateBack() {
-        if (referenceHistory.isEmpty()) return;
-        historyIndex = Math.min(historyIndex + 1, referenceHistory.size() - 1);
-        applyHistoryEntry(referenceHistory.get(historyIndex));
+        if (historyStore.size() == 0) return;
+        historyIndex = Math.min(historyIndex + 1, historyStore.size() - 1);
+        applyHistoryEntry(historyStore.get(historyIndex));
         updateNavigationButtonStates();
         displayVerseDataForCurrentHistoryEntry();
-        if (historyIndex >= referenceHistory.size() - 1) {
+        if (historyIndex >= historyStore.size() - 1) {
             historyFwdButton.requestFocusInWindow();
         }
     }
@@ -421,7 +435,7 @@ public class Gui extends JFrame {
             return;
         }
         historyIndex--;
-        applyHistoryEntry(referenceHistory.get(historyIndex));
+        applyHistoryEntry(historyStore.get(historyIndex));
         updateNavigationButtonStates();
         displayVerseDataForCurrentHistoryEntry();
         if (historyIndex <= 0) {
@@ -430,8 +444,8 @@ public class Gui extends JFrame {
     }
 
     private void updateNavigationButtonStates() {
-        boolean multipleEntries = referenceHistory.size() > 1;
-        historyBackButton.setEnabled(multipleEntries && historyIndex < referenceHistory.size() - 1);
+        boolean multipleEntries = historyStore.size() > 1;
+        historyBackButton.setEnabled(multipleEntries && historyIndex < historyStore.size() - 1);
         historyFwdButton.setEnabled(multipleEntries && historyIndex > 0);
     }
 
@@ -440,83 +454,6 @@ public class Gui extends JFrame {
         setSelectedModule(entry.moduleName);
     }
 
-    private void displayVerseDataForCurrentHistoryEntry() {
-        textDisplayPane.setBackground(guiConfig.textAreaBackground != null
-            ? guiConfig.textAreaBackground
-            : UIManager.getColor("TextPane.background"));
-        StyledDocument doc = textDisplayPane.getStyledDocument();
-        setTextSpacing(textDisplayPane, 0.2f, 2.0f, 2.0f);
-
-        ModuleScanner.Module selectedModule = (ModuleScanner.Module) moduleComboBox.getSelectedItem();
-        String reference = (String) referenceInputField.getEditor().getItem();
-
-        if (selectedModule == null || reference == null || reference.trim().isEmpty()) {
-            try { doc.remove(0, doc.getLength()); } catch (BadLocationException e) { /* ignore */ }
-            return;
-        }
-
-        VerseFetcher fetcher = null;
-        try {
-            String userLanguage = (String) languageComboBox.getSelectedItem();
-            if (userLanguage != null) {
-                userLanguage = userLanguage.trim();
-                if (userLanguage.isEmpty()) userLanguage = null;
-            }
-
-            String moduleLanguage = BookMapper.extractModuleLanguage(selectedModule.getPath());
-            BookMapper defaultBookMapper;
-            BookMapper moduleBookMapper;
-
-            AbbreviationManager abbrManager = new AbbreviationManager(configManager, 0);
-            Path abbrFile = abbrManager.ensureAbbreviationFile(selectedModule.getName(), selectedModule.getPath());
-            moduleBookMapper = new BookMapper(abbrManager.loadAbbreviations(abbrFile));
-
-            if (guiConfig.useModuleAbbreviations) {
-                defaultBookMapper = moduleBookMapper;
-            } else {
-                if (customMappingPath != null && Files.exists(customMappingPath)) {
-                    defaultBookMapper = new BookMapper(Files.newInputStream(customMappingPath), userLanguage, moduleLanguage);
-                } else {
-                    defaultBookMapper = BookMappingManager.getBookMapper(configManager, null, userLanguage, moduleLanguage);
-                }
-            }
-
-            VerseIndexManager indexManager = new VerseIndexManager(configManager, 0);
-            Map<Integer, Integer> verseIndex = indexManager.getVerseIndex(selectedModule.getName(), selectedModule.getPath());
-            ReferenceParser parser = new ReferenceParser(defaultBookMapper, verseIndex);
-
-            List<ReferenceParser.RangeWithCount> ranges = parser.parseWithCounts(reference);
-            if (ranges.isEmpty()) {
-                insertDefaultStyledText(doc, MessageFormat.format(
-                    bundle.getString("dialog.message.invalidReference"), reference));
-                return;
-            }
-
-            fetcher = new VerseFetcher(selectedModule.getPath());
-            List<Verse> verses = fetcher.fetch(new ArrayList<>(ranges));
-            List<GuiVerse> guiVerses = buildGuiVerses(verses, ranges, defaultBookMapper,
-                moduleBookMapper, moduleLanguage, userLanguage, selectedModule.getName());
-
-            if (guiConfig.showRawJson) {
-                Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
-                insertDefaultStyledText(doc, compactArrayField(gson.toJson(guiVerses), "allBookNames"));
-            } else {
-                new GuiTextFormatter(guiConfig).format(guiVerses, doc);
-            }
-            textDisplayPane.setCaretPosition(0);
-            configManager.setLastUsedModule(selectedModule.getName());
-
-        } catch (Exception e) {
-            insertDefaultStyledText(doc, MessageFormat.format(
-                bundle.getString("dialog.message.errorFetching"), e.getMessage()));
-            e.printStackTrace();
-        } finally {
-            if (fetcher != null) {
-                try { fetcher.close(); } catch (SQLException e) { e.printStackTrace(); }
-            }
-        }
-    }
-
     private void selectModulePath() {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
@@ -730,6 +667,12 @@ public class Gui extends JFrame {
         onWindowClosed.run();
     }
 
+    @Override
+    public void dispose() {
+        AppContext.get().resources().removeListener(resourceListener);
+        super.dispose();
+    }
+
     private static String escapeHtml(String text) {
         if (text == null) return "";
         return text.replace("&", "&amp;")
@@ -821,6 +764,67 @@ public class Gui extends JFrame {
         }
     }
 
+    private BookMapper loadDefaultBookMapper(boolean useModuleAbbreviations, Path mappingPath,
+            BookMapper moduleBookMapper, String userLanguage, String moduleLanguage) throws IOException {
+        if (useModuleAbbreviations) {
+            return moduleBookMapper;
+        }
+        if (mappingPath != null && Files.exists(mappingPath)) {
+            return MappingCache.loadBookMapper(
+                configManager.getDefaultConfigDir(), mappingPath, userLanguage, moduleLanguage);
+        }
+        return BookMappingManager.getBookMapper(configManager, null, userLanguage, moduleLanguage);
+    }
+
+    // Rebuilds the autocomplete index in the background when module, language or mapping changed
+    private void refreshReferenceCompleter() {
+        ModuleScanner.Module selectedModule = (ModuleScanner.Module) moduleComboBox.getSelectedItem();
+        if (selectedModule == null) {
+            completerKey = null;
+            referenceAutoCompleter.setCompleter(null);
+            return;
+        }
+        String selectedLanguage = (String) languageComboBox.getSelectedItem();
+        String userLanguage = selectedLanguage != null && !selectedLanguage.trim().isEmpty()
+            ? selectedLanguage.trim() : null;
+        boolean useModuleAbbreviations = guiConfig.useModuleAbbreviations;
+        Path mappingPath = customMappingPath;
+
+        // The resource version makes installed or removed mapping extensions take effect
+        String key = selectedModule.getPath() + "|" + userLanguage + "|" + useModuleAbbreviations + "|" + mappingPath
+            + "|" + AppContext.get().resources().current().version;
+        if (key.equals(completerKey)) return;
+        completerKey = key;
+        referenceAutoCompleter.setCompleter(null);
+
+        SwingWorker<ReferenceCompleter, Void> worker = new SwingWorker<>() {
+            @Override
+            protected ReferenceCompleter doInBackground() throws Exception {
+                String moduleLanguage = BookMapper.extractModuleLanguage(selectedModule.getPath());
+                AbbreviationManager abbrManager = new AbbreviationManager(configManager, 0);
+                Path abbrFile = abbrManager.ensureAbbreviationFile(selectedModule.getName(), selectedModule.getPath());
+                BookMapper moduleBookMapper = new BookMapper(abbrManager.loadAbbreviations(abbrFile));
+                BookMapper defaultBookMapper = loadDefaultBookMapper(useModuleAbbreviations, mappingPath,
+                    moduleBookMapper, userLanguage, moduleLanguage);
+                Map<Integer, Integer> verseIndex = new VerseIndexManager(configManager, 0)
+                    .getVerseIndex(selectedModule.getName(), selectedModule.getPath());
+                return new ReferenceCompleter(defaultBookMapper, userLanguage, moduleLanguage, verseIndex);
+            }
+
+            @Override
+            protected void done() {
+                // A newer selection may have been made while this one was building
+                if (!key.equals(completerKey)) return;
+                try {
+                    referenceAutoCompleter.setCompleter(get());
+                } catch (Exception e) {
+                    System.err.println("Failed to build reference suggestions: " + e.getMessage());
+                }
+            }
+        };
+        worker.execute();
+    }
+
     private List<GuiVerse> buildGuiVerses(
             List<Verse> verses,
             List<ReferenceParser.RangeWithCount> ranges,
@@ -831,32 +835,20 @@ public class Gui extends JFrame {
             String moduleName) {
 
         List<GuiVerse> guiVerses = new ArrayList<>();
+        ResolvedBookView bookView = defaultBookMapper.resolve(userLanguage, moduleLanguage, moduleBookMapper);
         for (Verse verse : verses) {
             Reference ref = findContainingReference(ranges, verse);
             String userProvidedShortName = (ref != null) ? ref.getBookName() : null;
             int bookNum = verse.getBookNumber();
 
-            Optional<Book> defaultBookOpt = defaultBookMapper.getBook(bookNum);
-            String defaultFullName  = defaultBookOpt.map(Book::getFullName).orElse("");
-            String defaultShortName = defaultBookOpt.map(book ->
-                (userProvidedShortName != null && book.getShortNames().contains(userProvidedShortName))
-                    ? userProvidedShortName
-                    : book.getShortNames().stream().findFirst().orElse("")
-            ).orElse("");
-
-            Optional<Book> moduleBookOpt = moduleBookMapper.getBook(bookNum);
-            String moduleFullName  = moduleBookOpt.map(Book::getFullName).orElse(defaultFullName);
-            String moduleShortName = moduleBookOpt.map(book -> {
-                List<String> shortNames = book.getShortNames();
-                return (shortNames.size() > 1)
-                    ? shortNames.get(1)
-                    : shortNames.stream().findFirst().orElse("");
-            }).orElse(defaultShortName);
+            // Language-aware default names with module names, resolved once per mapper pair
+            ResolvedBookView.Entry bookEntry = bookView.get(bookNum);
+            String defaultShortName = bookEntry.abbreviationFor(userProvidedShortName);
 
             guiVerses.add(new GuiVerse(
-                bookNum, defaultFullName, defaultShortName,
-                moduleFullName, moduleShortName,
-                defaultBookMapper.getAllBookNames(bookNum, moduleBookMapper, moduleLanguage, userLanguage),
+                bookNum, bookEntry.fullName, defaultShortName,
+                bookEntry.moduleFullName, bookEntry.moduleShortNameOr(defaultShortName),
+                bookEntry.allNames,
                 verse.getChapter(), verse.getVerse(), verse.getText(),
                 moduleName
             ));
@@ -865,6 +857,15 @@ public class Gui extends JFrame {
     }
 
     private void updateAndDisplayVerseData() {
+        refreshReferenceCompleter();
+        displayVerseData(true);
+    }
+
+    private void displayVerseDataForCurrentHistoryEntry() {
+        displayVerseData(false);
+    }
+
+    private void displayVerseData(boolean recordHistory) {
         textDisplayPane.setBackground(guiConfig.textAreaBackground != null
             ? guiConfig.textAreaBackground
             : UIManager.getColor("TextPane.background"));
@@ -879,6 +880,8 @@ public class Gui extends JFrame {
             return;
         }
 
+        String trimmed = reference.trim();
+        HistoryEntry entry = new HistoryEntry(trimmed, selectedModule.getName());
         VerseFetcher fetcher = null;
         try {
             String userLanguage = (String) languageComboBox.getSelectedItem();
@@ -887,43 +890,38 @@ public class Gui extends JFrame {
                 if (userLanguage.isEmpty()) userLanguage = null;
             }
 
-            String moduleLanguage = BookMapper.extractModuleLanguage(selectedModule.getPath());
-            BookMapper defaultBookMapper;
-            BookMapper moduleBookMapper;
+            String renderKey = renderKey(selectedModule, userLanguage);
+            List<GuiVerse> guiVerses = historyStore.getCachedVerses(entry, renderKey);
+            if (guiVerses == null) {
+                String moduleLanguage = BookMapper.extractModuleLanguage(selectedModule.getPath());
+                if (!renderKey.equals(bookMappersKey)) {
+                    AbbreviationManager abbrManager = new AbbreviationManager(configManager, 0);
+                    Path abbrFile = abbrManager.ensureAbbreviationFile(selectedModule.getName(), selectedModule.getPath());
+                    lookupModuleBookMapper = new BookMapper(abbrManager.loadAbbreviations(abbrFile));
+                    lookupDefaultBookMapper = loadDefaultBookMapper(guiConfig.useModuleAbbreviations, customMappingPath,
+                        lookupModuleBookMapper, userLanguage, moduleLanguage);
+                    bookMappersKey = renderKey;
+                }
 
-            AbbreviationManager abbrManager = new AbbreviationManager(configManager, 0);
-            Path abbrFile = abbrManager.ensureAbbreviationFile(selectedModule.getName(), selectedModule.getPath());
-            moduleBookMapper = new BookMapper(abbrManager.loadAbbreviations(abbrFile));
+                VerseIndexManager indexManager = new VerseIndexManager(configManager, 0);
+                VerseIndexManager.VerseIndex verseIndex = indexManager.getIndex(
+                    selectedModule.getName(), selectedModule.getPath());
+                ReferenceParser parser = new ReferenceParser(lookupDefaultBookMapper, verseIndex);
 
-            if (guiConfig.useModuleAbbreviations) {
-                defaultBookMapper = moduleBookMapper;
-            } else {
-                if (customMappingPath != null && Files.exists(customMappingPath)) {
-                    defaultBookMapper = new BookMapper(
-                        Files.newInputStream(customMappingPath), userLanguage, moduleLanguage);
-                } else {
-                    defaultBookMapper = BookMappingManager.getBookMapper(
-                        configManager, null, userLanguage, moduleLanguage);
+                List<ReferenceParser.RangeWithCount> ranges = parser.parseWithCounts(reference);
+                if (ranges.isEmpty()) {
+                    insertDefaultStyledText(doc, MessageFormat.format(
+                        bundle.getString("dialog.message.invalidReference"), reference));
+                    return;
                 }
-            }
 
-            VerseIndexManager indexManager = new VerseIndexManager(configManager, 0);
-            Map<Integer, Integer> verseIndex = indexManager.getVerseIndex(
-                selectedModule.getName(), selectedModule.getPath());
-            ReferenceParser parser = new ReferenceParser(defaultBookMapper, verseIndex);
-
-            List<ReferenceParser.RangeWithCount> ranges = parser.parseWithCounts(reference);
-            if (ranges.isEmpty()) {
-                insertDefaultStyledText(doc, MessageFormat.format(
-                    bundle.getString("dialog.message.invalidReference"), reference));
-                return;
+                fetcher = new VerseFetcher(selectedModule.getPath());
+                List<Verse> verses = fetcher.fetch(new ArrayList<>(ranges));
+                guiVerses = buildGuiVerses(verses, ranges, lookupDefaultBookMapper,
+                    lookupModuleBookMapper, moduleLanguage, userLanguage, selectedModule.getName());
+                historyStore.cacheVerses(entry, renderKey, guiVerses);
             }
 
-            fetcher = new VerseFetcher(selectedModule.getPath());
-            List<Verse> verses = fetcher.fetch(new ArrayList<>(ranges));
-            List<GuiVerse> guiVerses = buildGuiVerses(verses, ranges, defaultBookMapper,
-                moduleBookMapper, moduleLanguage, userLanguage, selectedModule.getName());
-
             if (guiConfig.showRawJson) {
                 Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
                 insertDefaultStyledText(doc,
@@ -932,16 +930,20 @@ public class Gui extends JFrame {
                 new GuiTextFormatter(guiConfig).format(guiVerses, doc);
             }
 
-            String trimmed = reference.trim();
-            HistoryEntry newEntry = new HistoryEntry(trimmed, selectedModule.getName());
-            int existingIdx = referenceHistory.indexOf(newEntry);
-            if (existingIdx >= 0) referenceHistory.remove(existingIdx);
-            referenceHistory.addFirst(newEntry);
-            referenceInputField.setModel(new DefaultComboBoxModel<>(
-                referenceHistory.toArray(new HistoryEntry[0])));
-            referenceInputField.getEditor().setItem(trimmed);
-            historyIndex = -1;
-            updateNavigationButtonStates();
+            if (recordHistory) {
+                if (!historyStore.isMostRecent(entry)) {
+                    historyStore.add(entry);
+                    updatingHistoryModel = true;
+                    try {
+                        historyModel.historyChanged(entry);
+                    } finally {
+                        updatingHistoryModel = false;
+                    }
+                }
+                referenceInputField.getEditor().setItem(trimmed);
+                historyIndex = -1;
+                updateNavigationButtonStates();
+            }
 
             textDisplayPane.setCaretPosition(0);
             configManager.setLastUsedModule(selectedModule.getName());
@@ -957,6 +959,27 @@ public class Gui extends JFrame {
         }
     }
 
+    // Everything apart from the reference and module name that the displayed verses depend on.
+    // The file times make edited mappings and abbreviations take effect, and the resource
+    // version installed or removed mapping extensions.
+    private String renderKey(ModuleScanner.Module module, String userLanguage) throws IOException {
+        Path configDir = configManager.getDefaultConfigDir();
+        Path mappingFile = customMappingPath != null ? customMappingPath : configDir.resolve("default_mapping.json");
+        Path abbrFile = configDir.resolve("moduledata").resolve(module.getName() + ".abbr.json");
+        return module.getPath() + "|" + Files.getLastModifiedTime(module.getPath()).toMillis()
+            + "|" + userLanguage + "|" + guiConfig.useModuleAbbreviations + "|" + customMappingPath
+            + "|" + lastModified(mappingFile) + "|" + lastModified(abbrFile)
+            + "|" + AppContext.get().resources().current().version;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
     private void insertDefaultStyledText(StyledDocument doc, String text) {
         try {
             doc.remove(0, doc.getLength());
@@ -1001,30 +1024,28 @@ public class Gui extends JFrame {
     // Inner classes
     // -----------------------------------------------------------------------
 
-    private static class HistoryEntry {
-        final String reference;
-        final String moduleName;
+    // Combo box model that reads the history store directly instead of copying it
+    private class HistoryComboBoxModel extends AbstractListModel<HistoryEntry> implements ComboBoxModel<HistoryEntry> {
+        private Object selectedItem;
 
-        HistoryEntry(String reference, String moduleName) {
-            this.reference  = reference;
-            this.moduleName = moduleName;
-        }
+        @Override
+        public int getSize() { return historyStore.size(); }
 
         @Override
-        public String toString() {
-            return reference + "  [" + moduleName + "]";
-        }
+        public HistoryEntry getElementAt(int index) { return historyStore.get(index); }
 
         @Override
-        public boolean equals(Object o) {
-            if (!(o instanceof HistoryEntry)) return false;
-            HistoryEntry other = (HistoryEntry) o;
-            return reference.equals(other.reference) && moduleName.equals(other.moduleName);
+        public void setSelectedItem(Object item) {
+            selectedItem = item;
+            fireContentsChanged(this, -1, -1);
         }
 
         @Override
-        public int hashCode() {
-            return 31 * reference.hashCode() + moduleName.hashCode();
+        public Object getSelectedItem() { return selectedItem; }
+
+        void historyChanged(HistoryEntry current) {
+            selectedItem = current;
+            fireContentsChanged(this, 0, Math.max(0, getSize() - 1));
         }
     }
 
@@ -13,6 +13,7 @@ public class GuiConfig {
     public Map<String, TextStyle> styles = new HashMap<>();
     public boolean showRawJson = false;
     public Color textAreaBackground = null;
+    public int historySize = 200;
 
     public GuiConfig() {
         this.lookAndFeelClassName = FlatArcIJTheme.class.getName();
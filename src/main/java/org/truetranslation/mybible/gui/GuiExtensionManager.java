@@ -1,11 +1,11 @@
 package org.truetranslation.mybible.gui;
 
+import org.truetranslation.mybible.core.AppContext;
 import org.truetranslation.mybible.core.ConfigManager;
 import org.truetranslation.mybible.core.ExtensionManager;
 import org.truetranslation.mybible.core.ExtensionManager.ExtensionInfo;
 import org.truetranslation.mybible.core.ExtensionManager.RegistryExtension;
 import org.truetranslation.mybible.core.ExtensionManager.ExtensionValidationException;
-import org.truetranslation.mybible.core.ExternalResourceBundleLoader;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -56,12 +56,8 @@ public class GuiExtensionManager extends JDialog {
     public GuiExtensionManager(Frame owner) {
         super(owner, true);
         this.owner = owner;
-        this.configManager = new ConfigManager();
-
-        ExternalResourceBundleLoader loader = new ExternalResourceBundleLoader(
-            configManager.getDefaultConfigDir()
-        );
-        this.bundle = loader.getBundle("i18n.gui");
+        this.configManager = AppContext.get().config();
+        this.bundle = AppContext.get().bundle("i18n.gui");
 
         try {
             this.extensionManager = new ExtensionManager(configManager, 0);
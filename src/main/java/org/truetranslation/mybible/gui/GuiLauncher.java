@@ -0,0 +1,51 @@
+package org.truetranslation.mybible.gui;
+
+import com.formdev.flatlaf.FlatLightLaf;
+
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+
+/**
+ * Starts the GUI for the gui command. Its signature uses only strings and primitives, so
+ * the command line can call it without loading it, and commands that never open a window
+ * do not load Swing, AWT or FlatLaf.
+ */
+public final class GuiLauncher {
+
+    private GuiLauncher() {
+    }
+
+    /**
+     * Applies the configured look and feel, opens the main window and waits until it is closed.
+     * A look and feel that fails to load is reported with its stack trace unless quiet is set.
+     */
+    public static int launch(String moduleName, String reference, boolean quiet) throws InterruptedException {
+        applyLookAndFeel(quiet);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            Gui gui = new Gui(moduleName, reference, latch::countDown);
+            gui.setVisible(true);
+        });
+        latch.await();
+        return 0;
+    }
+
+    private static void applyLookAndFeel(boolean quiet) {
+        GuiConfigManager configManager = new GuiConfigManager();
+        String lafClassName = configManager.getConfig().lookAndFeelClassName;
+        try {
+            if (lafClassName != null && !lafClassName.isEmpty()) {
+                UIManager.setLookAndFeel(lafClassName);
+            } else {
+                UIManager.setLookAndFeel(new FlatLightLaf());
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to set Look and Feel. Continuing with default.");
+            if (!quiet) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
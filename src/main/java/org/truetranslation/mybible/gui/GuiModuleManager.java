@@ -1,7 +1,7 @@
 package org.truetranslation.mybible.gui;
 
+import org.truetranslation.mybible.core.AppContext;
 import org.truetranslation.mybible.core.ConfigManager;
-import org.truetranslation.mybible.core.ExternalResourceBundleLoader;
 import org.truetranslation.mybible.core.ModuleManager;
 
 import javax.swing.*;
@@ -65,8 +65,7 @@ public class GuiModuleManager extends JDialog {
         this.configManager = configManager;
         this.guiConfigManager = guiConfigManager;
 
-        ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(configManager.getDefaultConfigDir());
-        this.bundle = externalLoader.getBundle("i18n.gui");
+        this.bundle = AppContext.get().bundle("i18n.gui");
 
         setTitle(bundle.getString("moduleMgr.title"));
 
@@ -578,12 +577,7 @@ public class GuiModuleManager extends JDialog {
         Set<String> languages = new TreeSet<>();
 
         try {
-            List<ModuleManager.CachedModule> modules = moduleManager.listAvailableModules(null, null, null, null);
-            for (ModuleManager.CachedModule mod : modules) {
-                if (mod.language != null && !mod.language.isEmpty()) {
-                    languages.add(mod.language);
-                }
-            }
+            languages.addAll(moduleManager.listAvailableLanguages());
         } catch (IOException e) {
             // Ignore
         }
@@ -636,23 +630,23 @@ public class GuiModuleManager extends JDialog {
         SwingWorker<Void, String> worker = new SwingWorker<>() {
             @Override
             protected Void doInBackground() throws Exception {
-                int total = moduleNames.size();
-                int current = 0;
-
-                for (String name : moduleNames) {
-                    current++;
-                    publish(MessageFormat.format(bundle.getString("moduleMgr.progress.installingModule"), 
-                        name, current, total));
+                ModuleManager.InstallResult result = moduleManager.installModules(moduleNames, null, false,
+                    new ModuleManager.ProgressCallback() {
+                        @Override
+                        public void update(int current, int total, String message) {
+                            setProgress((int) ((current * 100.0) / total));
+                            publish(MessageFormat.format(bundle.getString("moduleMgr.progress.batch"),
+                                message, current, total));
+                        }
 
-                    try {
-                        moduleManager.installModule(name, null, false, (prog, tot, msg) -> {
-                            int percent = (int) ((prog * 100.0) / tot);
-                            setProgress(percent);
-                        });
-                    } catch (IOException e) {
-                        publish(MessageFormat.format(bundle.getString("moduleMgr.error.installModuleFailed"), 
-                            name, e.getMessage()));
-                    }
+                        @Override
+                        public void moduleUpdate(String moduleName, int current, int total, String message) {
+                            // The bar shows modules done; per-module byte counts would make it jump
+                        }
+                    });
+                for (Map.Entry<String, IOException> failure : result.failed.entrySet()) {
+                    publish(MessageFormat.format(bundle.getString("moduleMgr.error.installModuleFailed"),
+                        failure.getKey(), failure.getValue().getMessage()));
                 }
                 return null;
             }
@@ -2,8 +2,7 @@ package org.truetranslation.mybible.gui;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import org.truetranslation.mybible.core.ConfigManager;
-import org.truetranslation.mybible.core.ExternalResourceBundleLoader;
+import org.truetranslation.mybible.core.AppContext;
 
 import javax.swing.JOptionPane;
 import java.awt.Color;
@@ -15,8 +14,6 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class GuiThemeManager {
 
@@ -24,15 +21,8 @@ public class GuiThemeManager {
     private final ResourceBundle bundle;
 
     public GuiThemeManager() {
-        // Use the core ConfigManager to find the root config directory
-        ConfigManager coreConfig = new ConfigManager();
-        this.themesDirectory = coreConfig.getDefaultConfigDir().resolve("gui_themes");
-
-        // Use ExternalResourceBundleLoader to support external i18n files
-        ExternalResourceBundleLoader externalLoader = new ExternalResourceBundleLoader(
-            coreConfig.getDefaultConfigDir()
-        );
-        this.bundle = externalLoader.getBundle("i18n.gui");
+        this.themesDirectory = AppContext.get().getConfigDir().resolve("gui_themes");
+        this.bundle = AppContext.get().bundle("i18n.gui");
 
         try {
             // Ensure the gui_themes directory exists
@@ -75,6 +65,7 @@ public class GuiThemeManager {
                 .create();
             gson.toJson(config, writer);
         }
+        AppContext.get().resources().reload();
 
         return true;
     }
@@ -94,6 +85,7 @@ public class GuiThemeManager {
                 .create();
             gson.toJson(config, writer);
         }
+        AppContext.get().resources().reload();
     }
 
     /**
@@ -116,19 +108,11 @@ public class GuiThemeManager {
     }
 
     /**
-     * Returns a list of all available theme names by scanning the directory.
+     * Returns a list of all available theme names, as of the last resource reload.
      * @return A list of theme names (without the .json extension).
      */
     public List<String> getAvailableThemes() {
-        try (Stream<Path> files = Files.list(themesDirectory)) {
-            return files
-                .filter(f -> f.toString().endsWith(".json"))
-                .map(f -> f.getFileName().toString().replace(".json", ""))
-                .collect(Collectors.toList());
-        } catch (IOException e) {
-            System.err.println("Could not list GUI themes: " + e.getMessage());
-            return new ArrayList<>();
-        }
+        return new ArrayList<>(AppContext.get().resources().current().themeNames());
     }
 
     /**
@@ -139,7 +123,9 @@ public class GuiThemeManager {
     public boolean deleteTheme(String themeName) {
         try {
             Path themeFile = themesDirectory.resolve(themeName + ".json");
-            return Files.deleteIfExists(themeFile);
+            boolean deleted = Files.deleteIfExists(themeFile);
+            AppContext.get().resources().reload();
+            return deleted;
         } catch (IOException e) {
             System.err.println("Could not delete theme: " + e.getMessage());
             return false;
@@ -0,0 +1,204 @@
+package org.truetranslation.mybible.gui;
+
+import org.truetranslation.mybible.core.model.GuiVerse;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reference history of the GUI, most recent first, persisted across sessions.
+ * Lookups are appended to a plain log file (module TAB reference per line); the log
+ * is replayed and compacted on load and whenever it grows past twice the cap.
+ * Verses built for recent entries are kept in memory so navigating the history
+ * does not go back to the module database.
+ */
+public class HistoryStore {
+
+    static final String HISTORY_FILE = "gui_history.log";
+    private static final int RESULT_CACHE_SIZE = 20;
+
+    static class HistoryEntry {
+        final String reference;
+        final String moduleName;
+
+        HistoryEntry(String reference, String moduleName) {
+            this.reference  = reference;
+            this.moduleName = moduleName;
+        }
+
+        @Override
+        public String toString() {
+            return reference + "  [" + moduleName + "]";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof HistoryEntry)) return false;
+            HistoryEntry other = (HistoryEntry) o;
+            return reference.equals(other.reference) && moduleName.equals(other.moduleName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * reference.hashCode() + moduleName.hashCode();
+        }
+    }
+
+    private static class CachedResult {
+        final String renderKey;
+        final List<GuiVerse> verses;
+
+        CachedResult(String renderKey, List<GuiVerse> verses) {
+            this.renderKey = renderKey;
+            this.verses = verses;
+        }
+    }
+
+    private final Path historyFile;
+    private final int maxEntries;
+    // Insertion order is oldest first; re-adding an entry moves it to the end
+    private final LinkedHashMap<HistoryEntry, HistoryEntry> entries = new LinkedHashMap<>();
+    private final LinkedHashMap<HistoryEntry, CachedResult> results =
+        new LinkedHashMap<HistoryEntry, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<HistoryEntry, CachedResult> eldest) {
+                return size() > RESULT_CACHE_SIZE;
+            }
+        };
+    private List<HistoryEntry> snapshot;
+    private int logLines = 0;
+
+    public HistoryStore(Path configDir, int maxEntries) {
+        this.historyFile = configDir.resolve(HISTORY_FILE);
+        this.maxEntries = Math.max(1, maxEntries);
+        load();
+    }
+
+    /**
+     * Entries, most recent first. The returned list is shared until the history changes.
+     */
+    public List<HistoryEntry> getEntries() {
+        if (snapshot == null) {
+            List<HistoryEntry> list = new ArrayList<>(entries.keySet());
+            Collections.reverse(list);
+            snapshot = Collections.unmodifiableList(list);
+        }
+        return snapshot;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public HistoryEntry get(int index) {
+        return getEntries().get(index);
+    }
+
+    public boolean isMostRecent(HistoryEntry entry) {
+        List<HistoryEntry> list = getEntries();
+        return !list.isEmpty() && list.get(0).equals(entry);
+    }
+
+    /**
+     * Moves an entry to the front, adding it if it is new, and records it in the log.
+     */
+    public void add(HistoryEntry entry) {
+        if (isMostRecent(entry)) return;
+        putFirst(entry);
+        snapshot = null;
+        append(entry);
+    }
+
+    public List<GuiVerse> getCachedVerses(HistoryEntry entry, String renderKey) {
+        CachedResult cached = results.get(entry);
+        return cached != null && cached.renderKey.equals(renderKey) ? cached.verses : null;
+    }
+
+    public void cacheVerses(HistoryEntry entry, String renderKey, List<GuiVerse> verses) {
+        results.put(entry, new CachedResult(renderKey, Collections.unmodifiableList(new ArrayList<>(verses))));
+    }
+
+    private void putFirst(HistoryEntry entry) {
+        entries.remove(entry);
+        entries.put(entry, entry);
+        if (entries.size() > maxEntries) {
+            Iterator<HistoryEntry> oldest = entries.keySet().iterator();
+            HistoryEntry removed = oldest.next();
+            oldest.remove();
+            results.remove(removed);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(historyFile)) return;
+        try {
+            for (String line : Files.readAllLines(historyFile, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0 || tab == line.length() - 1) continue;
+                putFirst(new HistoryEntry(line.substring(tab + 1), line.substring(0, tab)));
+                logLines++;
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read history: " + e.getMessage());
+            return;
+        }
+        if (logLines > entries.size()) compact();
+    }
+
+    private void append(HistoryEntry entry) {
+        if (logLines + 1 > maxEntries * 2) {
+            compact();
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(historyFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(toLine(entry));
+            writer.newLine();
+            logLines++;
+        } catch (IOException e) {
+            System.err.println("Failed to save history: " + e.getMessage());
+        }
+    }
+
+    // Rewrites the log with only the current entries, oldest first
+    private void compact() {
+        try {
+            Files.createDirectories(historyFile.getParent());
+            Path tempFile = Files.createTempFile(historyFile.getParent(), HISTORY_FILE, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (HistoryEntry entry : entries.keySet()) {
+                    writer.write(toLine(entry));
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tempFile, historyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, historyFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            logLines = entries.size();
+        } catch (IOException e) {
+            System.err.println("Failed to save history: " + e.getMessage());
+        }
+    }
+
+    private static String toLine(HistoryEntry entry) {
+        return clean(entry.moduleName) + "\t" + clean(entry.reference);
+    }
+
+    private static String clean(String value) {
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
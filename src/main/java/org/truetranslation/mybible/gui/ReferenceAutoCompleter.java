@@ -0,0 +1,217 @@
+package org.truetranslation.mybible.gui;
+
+import org.truetranslation.mybible.core.ReferenceCompleter;
+
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.InputMap;
+import javax.swing.JComponent;
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+/**
+ * Suggestion popup for the reference field. Suggestions come from a ReferenceCompleter
+ * built off the EDT; until one is set, typing shows nothing.
+ */
+public class ReferenceAutoCompleter {
+
+    private static final int MAX_SUGGESTIONS = 12;
+    private static final int VISIBLE_ROWS = 8;
+
+    private final JTextField editor;
+    private final JPopupMenu popup = new JPopupMenu();
+    private final DefaultListModel<String> listModel = new DefaultListModel<>();
+    private final JList<String> list = new JList<>(listModel);
+    private volatile ReferenceCompleter completer;
+    private boolean applying = false;
+
+    public ReferenceAutoCompleter(JTextField editor) {
+        this.editor = editor;
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setFocusable(false);
+        list.setVisibleRowCount(VISIBLE_ROWS);
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (list.getSelectedValue() != null) acceptSuggestion();
+            }
+        });
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setBorder(BorderFactory.createEmptyBorder());
+        popup.add(scroll);
+        popup.setFocusable(false);
+        popup.setBorder(BorderFactory.createLineBorder(list.getSelectionBackground()));
+
+        editor.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { scheduleUpdate(); }
+            @Override public void removeUpdate(DocumentEvent e) { scheduleUpdate(); }
+            @Override public void changedUpdate(DocumentEvent e) { }
+        });
+        editor.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) { hide(); }
+        });
+        installKeyBindings();
+    }
+
+    public void setCompleter(ReferenceCompleter completer) {
+        this.completer = completer;
+    }
+
+    public void hide() {
+        popup.setVisible(false);
+    }
+
+    private void installKeyBindings() {
+        InputMap inputMap = editor.getInputMap(JComponent.WHEN_FOCUSED);
+
+        // Bindings are disabled while the popup is hidden, so the combo box and the
+        // window shortcuts (history popup, Escape to quit) keep working as before.
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "completionNext");
+        editor.getActionMap().put("completionNext", new PopupAction(() -> moveSelection(1)));
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), "completionPrevious");
+        editor.getActionMap().put("completionPrevious", new PopupAction(() -> moveSelection(-1)));
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "completionHide");
+        editor.getActionMap().put("completionHide", new PopupAction(this::hide));
+
+        // Enter accepts a highlighted suggestion; otherwise it submits the field as usual
+        Object enterKey = inputMap.get(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0));
+        Action submit = enterKey != null ? editor.getActionMap().get(enterKey) : null;
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "completionEnter");
+        editor.getActionMap().put("completionEnter", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (popup.isVisible() && list.getSelectedValue() != null) {
+                    acceptSuggestion();
+                    return;
+                }
+                hide();
+                if (submit != null) {
+                    submit.actionPerformed(e);
+                } else {
+                    editor.postActionEvent();
+                }
+            }
+        });
+
+        // Tab accepts too, so focus traversal keys are handled here instead of by the focus manager
+        editor.setFocusTraversalKeysEnabled(false);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_TAB, 0), "completionAccept");
+        editor.getActionMap().put("completionAccept", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (popup.isVisible()) {
+                    acceptSuggestion();
+                } else {
+                    editor.transferFocus();
+                }
+            }
+        });
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_TAB, KeyEvent.SHIFT_DOWN_MASK), "completionBackward");
+        editor.getActionMap().put("completionBackward", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                hide();
+                editor.transferFocusBackward();
+            }
+        });
+    }
+
+    // Document events arrive while the document is locked; update after they finish
+    private void scheduleUpdate() {
+        if (applying) return;
+        SwingUtilities.invokeLater(this::updateSuggestions);
+    }
+
+    private void updateSuggestions() {
+        ReferenceCompleter current = completer;
+        if (current == null || !editor.isFocusOwner()) {
+            hide();
+            return;
+        }
+        String text = editor.getText();
+        List<String> suggestions = current.complete(text, MAX_SUGGESTIONS);
+        // Nothing to offer when the only suggestion is what was already typed
+        if (suggestions.isEmpty() || (suggestions.size() == 1 && suggestions.get(0).equals(text))) {
+            hide();
+            return;
+        }
+
+        listModel.clear();
+        for (String suggestion : suggestions) listModel.addElement(suggestion);
+        list.clearSelection();
+        list.setVisibleRowCount(Math.min(VISIBLE_ROWS, suggestions.size()));
+        popup.pack();
+        popup.setPopupSize(Math.max(editor.getWidth(), popup.getPreferredSize().width), popup.getPreferredSize().height);
+        if (!popup.isVisible()) {
+            popup.show(editor, 0, editor.getHeight());
+        } else {
+            popup.revalidate();
+            popup.repaint();
+        }
+        editor.requestFocusInWindow();
+    }
+
+    private void moveSelection(int delta) {
+        int size = listModel.getSize();
+        if (size == 0) return;
+        int index = list.getSelectedIndex() + delta;
+        if (index < 0) index = size - 1;
+        if (index >= size) index = 0;
+        list.setSelectedIndex(index);
+        list.ensureIndexIsVisible(index);
+    }
+
+    private void acceptSuggestion() {
+        String value = list.getSelectedValue();
+        if (value == null && listModel.getSize() > 0) value = listModel.getElementAt(0);
+        hide();
+        if (value == null) return;
+        // A completed book name is followed by its chapters
+        boolean bookName = !Character.isDigit(value.charAt(value.length() - 1));
+        if (bookName) value += " ";
+        applying = true;
+        try {
+            editor.setText(value);
+            editor.setCaretPosition(value.length());
+        } finally {
+            applying = false;
+        }
+        if (bookName) SwingUtilities.invokeLater(this::updateSuggestions);
+    }
+
+    private class PopupAction extends AbstractAction {
+        private final Runnable action;
+
+        PopupAction(Runnable action) {
+            this.action = action;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return popup.isVisible();
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            action.run();
+        }
+    }
+}